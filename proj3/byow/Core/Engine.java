@@ -6,11 +6,14 @@ import byow.input.KeyboardInputSource;
 import byow.input.StringInputDevice;
 import byow.TileEngine.TERenderer;
 import byow.TileEngine.TETile;
-import byow.WorldGen.MSTMapGenerator;
+import byow.WorldGen.ChunkedWorld;
 import byow.WorldGen.MapGenerator;
+import byow.WorldGen.ParallelMapGenerator;
 
 import java.awt.event.KeyEvent;
+import java.io.IOException;
 import java.util.Random;
+import java.util.function.Supplier;
 
 /**
  * Main menu class of BYOW. Finds a way to retrieve a GameState object, either by loading or
@@ -23,10 +26,22 @@ import java.util.Random;
 public class Engine {
 
     /**
-     * Map generation algorithm to be used for generating a new map via the MapGenerator interface.
-     * Use with MSTMapGenerator() or RFMapGenerator().
+     * Name of the map generation algorithm to be used for generating a new map via the
+     * MapGenerator interface. Use with "MST" or "BSP", as listed in MapGenerator.byName().
      */
-    public static final MapGenerator MAP_ALGORITHM = new MSTMapGenerator();
+    public static final String MAP_ALGORITHM_NAME = "MST";
+    /**
+     * Whether the MST generator repairs a hallway it could not build instead of generating the
+     * whole map again. Repairing is faster, but seeds that needed a restart, about 6% of them
+     * at 60 by 60 and 24% at 120 by 120, make a different map than they do with this off.
+     */
+    public static final boolean REPAIR_HALLWAYS = false;
+    /**
+     * Makes the generator named by MAP_ALGORITHM_NAME. A new generator is made for every world,
+     * since worlds can be generated on a background thread.
+     */
+    public static final Supplier<MapGenerator> MAP_ALGORITHM =
+            MapGenerator.byName(MAP_ALGORITHM_NAME, REPAIR_HALLWAYS);
 
     /** Width of the canvas in pixels. */
     public static final int CANVAS_WIDTH = 1050;
@@ -36,6 +51,30 @@ public class Engine {
     public static final int MAP_WIDTH = 60;
     /** Height of the map in tiles. */
     public static final int MAP_HEIGHT = 60;
+    /** Whether the displayed map is built, and the tiles the player sees are marked as explored,
+     *  on every core for maps of at least LayeredGrid.PARALLEL_THRESHOLD tiles. */
+    public static final boolean PARALLEL_FOG_OF_WAR = false;
+    /** Whether the map of a new world that is not chunked is kept off the heap, in
+     *  Persistence.WORLD_FILE, so that large saved worlds open without reading the whole map. */
+    public static final boolean MAPPED_WORLD = false;
+    /** Whether a new world that is not chunked is split into regions of at least REGION_SIZE
+     *  tiles a side that are generated on every core. The map only depends on the seed, but it
+     *  is not the map that the seed makes with this off. */
+    public static final boolean PARALLEL_GENERATION = false;
+    /** Smallest width and height in tiles of a region of a world generated in parallel. */
+    public static final int REGION_SIZE = 40;
+    /** Whether new worlds that are not chunked are kept in Persistence.WORLD_CACHE_DIRECTORY,
+     *  so that a seed that was played before is read back instead of generated again. */
+    public static final boolean CACHE_WORLDS = false;
+    /** Most bytes of worlds kept in the world cache. */
+    public static final long WORLD_CACHE_BYTES = 64L * 1024 * 1024;
+    /** Whether new worlds go on forever, generated chunk by chunk as the player reaches them,
+     *  instead of being one MAP_WIDTH by MAP_HEIGHT map. */
+    public static final boolean CHUNKED_WORLD = false;
+    /** Width and height in tiles of one chunk of a chunked world. */
+    public static final int CHUNK_SIZE = 40;
+    /** Most chunks of a chunked world kept in memory at once. */
+    public static final int MAX_RESIDENT_CHUNKS = 25;
 
     /** Renderer used for the current session's canvas. Regenerated every time a program is run,
      *  and uses local fields from the Engine class to set up the canvas via ter.initialize(). */
@@ -47,6 +86,12 @@ public class Engine {
 
     /** Leaderboard object. It is null by default, until it is read or created. */
     private Leaderboard leaderboard;
+    /** Generates worlds in the background while the menus are shown. Only used when rendering,
+     *  so it is null for autograder input. */
+    private WorldPregenerator pregenerator;
+    /** Seed used if the player leaves the seed prompt empty, picked when the main menu opens so
+     *  that its world can be prepared in the meantime. */
+    private long randomSeed;
 
     /**
      * Method used for exploring a fresh world. This method initializes the renderer, then calls
@@ -58,6 +103,8 @@ public class Engine {
             ter.initialize(CANVAS_WIDTH, CANVAS_HEIGHT);
             input = new KeyboardInputSource();
             render = true;
+            pregenerator = new WorldPregenerator(Engine::newMapGenerator, MAP_WIDTH, MAP_HEIGHT,
+                    worldCache());
         }
         GameState game = doMainMenu();
         if (game != null) {
@@ -111,12 +158,19 @@ public class Engine {
      * entered. Each iteration, renders the main menu interface if render is true, then checks
      * if a key has been inputted. Ultimately creates the GameState object and returns it.
      *
+     * When rendering, a random seed is picked first and its world is prepared in the background,
+     * in case the player leaves the seed prompt empty.
+     *
      * @return GameState object, which either was created or loaded.
      */
     public GameState doMainMenu() {
         int character = Player.AVATAR1;
         leaderboard = Persistence.readLeaderboard();
         String name = leaderboard.savedName;
+        randomSeed = Math.abs((new Random()).nextLong());
+        if (pregenerator != null && !CHUNKED_WORLD) {
+            pregenerator.prepare(randomSeed);
+        }
         while (input.possibleNextInput()) {
             char nextKey = 0;
             if (render) {
@@ -166,19 +220,79 @@ public class Engine {
                 break;
             } else if (Character.isDigit(nextInputKey)) {
                 seedBuilder.append(nextInputKey);
+                prepareWorld(seedBuilder);
             } else if (nextInputKey == '\b' && seedBuilder.length() > 0) {
                 seedBuilder.deleteCharAt(seedBuilder.length() - 1);
+                prepareWorld(seedBuilder);
             }
         }
-        long seed = seedBuilder.length() == 0 ? Math.abs((new Random()).nextLong())
+        long seed = seedBuilder.length() == 0 ? randomSeed
                 : Long.parseLong(seedBuilder.toString());
-        Random random = new Random(seed);
-        TETile[][] worldMap = MAP_ALGORITHM.generate(MAP_WIDTH, MAP_HEIGHT, random);
-        GameState game = new GameState(ter, input, render, worldMap, random, seed, character, name);
+        GameState game;
+        if (CHUNKED_WORLD) {
+            Random random = new Random(seed);
+            ChunkedWorld chunks = new ChunkedWorld(MAP_ALGORITHM.get(), seed, CHUNK_SIZE,
+                    MAX_RESIDENT_CHUNKS);
+            int windowSize = GameState.WINDOW_CHUNKS * CHUNK_SIZE;
+            TETile[][] window = chunks.region(0, 0, windowSize, windowSize);
+            game = new GameState(ter, input, render, window, random, seed, character, name);
+            game.setChunkedWorld(chunks);
+        } else {
+            WorldPregenerator.World world = pregenerator == null
+                    ? WorldPregenerator.generate(newMapGenerator(), seed, MAP_WIDTH, MAP_HEIGHT,
+                    worldCache()) : awaitWorld(seed);
+            game = new GameState(ter, input, render, world.map(), world.random(), seed,
+                    character, name);
+            game.getWorldGrid().setRoomGraph(world.roomGraph());
+            if (MAPPED_WORLD) {
+                try {
+                    game.useMappedWorld(Persistence.WORLD_FILE);
+                } catch (IOException exception) {
+                    System.out.println("Error mapping world:\r\n" + exception.getMessage());
+                }
+            }
+        }
+        game.setParallelFogOfWar(PARALLEL_FOG_OF_WAR);
         game.setUpWorld();
         return game;
     }
 
+    /** Starts preparing the world of the seed typed so far, if worlds are prepared at all. Seeds
+     *  of more than 18 digits might not fit in a long, so they are left until they are saved. */
+    private void prepareWorld(StringBuilder seedBuilder) {
+        if (pregenerator == null || CHUNKED_WORLD || seedBuilder.length() > 18) {
+            return;
+        }
+        pregenerator.prepare(seedBuilder.length() == 0 ? randomSeed
+                : Long.parseLong(seedBuilder.toString()));
+    }
+
+    /** Returns the world of a seed from the pregenerator, showing a loading screen until it is
+     *  done generating. */
+    private WorldPregenerator.World awaitWorld(long seed) {
+        pregenerator.prepare(seed);
+        int frame = 0;
+        while (!pregenerator.isReady(seed)) {
+            ter.renderGenerating(frame);
+            frame++;
+        }
+        return pregenerator.take(seed);
+    }
+
+    /** Returns the cache of generated worlds, or null if worlds are not cached. */
+    private static WorldCache worldCache() {
+        return CACHE_WORLDS ? new WorldCache(Persistence.WORLD_CACHE_DIRECTORY, WORLD_CACHE_BYTES)
+                : null;
+    }
+
+    /** Makes the generator for a new world that is not chunked. */
+    private static MapGenerator newMapGenerator() {
+        if (PARALLEL_GENERATION) {
+            return new ParallelMapGenerator(MAP_ALGORITHM, REGION_SIZE);
+        }
+        return MAP_ALGORITHM.get();
+    }
+
     /**
      * Attempts to read the data from file using the Persistence class, then updates it with the
      * current session's input, render, and TERenderer.
@@ -189,6 +303,8 @@ public class Engine {
         GameState oldGameState = Persistence.readData();
         if (oldGameState != null) {
             oldGameState.updateOldGameState(ter, input, render);
+            oldGameState.setParallelFogOfWar(PARALLEL_FOG_OF_WAR);
+            oldGameState.setMapGenerator(MAP_ALGORITHM.get());
             return oldGameState;
         }
         return null;
@@ -4,15 +4,27 @@ import byow.creatures.Creature;
 import byow.creatures.Key;
 import byow.creatures.Player;
 import byow.creatures.Robot;
+import byow.gridsys.FlowField;
+import byow.gridsys.FreeCellIndex;
 import byow.gridsys.Grid;
+import byow.gridsys.LayeredGrid;
+import byow.gridsys.MappedPaletteGrid;
+import byow.gridsys.OccupancyIndex;
+import byow.gridsys.PathMode;
 import byow.gridsys.TilePoint;
 import byow.input.InputSource;
 import byow.TileEngine.TERenderer;
 import byow.TileEngine.TETile;
 import byow.TileEngine.Tileset;
+import byow.WorldGen.ChunkedWorld;
+import byow.WorldGen.MapGenerator;
 import edu.princeton.cs.algs4.StdDraw;
 
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -26,9 +38,17 @@ import java.util.*;
  */
 public class GameState implements Serializable {
 
+    /** Pinned so that saves written before fields were added can still be read. */
+    private static final long serialVersionUID = 700607401607815284L;
+
     /** Number of enemies in the map. */
     public static final int ENEMIES_COUNT = 5;
-
+    /** How far the player can see when fog-of-war is on. */
+    public static final int SIGHT_RADIUS = 15;
+    /** Width and height in chunks of the map, when it is a window into a chunked world. */
+    public static final int WINDOW_CHUNKS = 3;
+    /** Chunks further than this from the middle of the window are evicted when it moves. */
+    private static final int KEEP_CHUNK_RADIUS = 2;
     /** Renderer used for the current session's canvas. Regenerated every time a program is run,
      *  and uses local fields from the Engine class to set up the canvas via ter.initialize(). */
     private transient TERenderer ter;
@@ -43,12 +63,23 @@ public class GameState implements Serializable {
     private final int width;
     /** Height of the map's grid; in other worlds, ther number of tiles in a column. */
     private final int height;
-    /** Underlying information about the generated world. */
-    private final Grid worldGrid;
-    /** The current actual map being displayed. Differs from data.worldMap, which is a reference
-     *  map that the code uses to determine how currMap looks or changes. */
-    private final Grid currGrid;
-
+    /** Underlying information about the generated world. In a chunked world, this is the part of
+     *  the world in the window, and is replaced whenever the window moves. */
+    private Grid worldGrid;
+    /** The current actual map being displayed, layered over worldGrid: creatures are drawn on
+     *  top of the world, and fog-of-war hides what the player cannot see. Built from worldGrid
+     *  and explored, so it is not saved. */
+    private transient LayeredGrid currGrid;
+    /** Distances from the player, shared by every robot chasing them. Recomputed before the
+     *  robots move each turn, so it is not saved. */
+    private transient FlowField playerField;
+    /** Where the player, robots and keys stand, so that finding who is on a tile does not look
+     *  through every creature. Rebuilt from the creatures after loading, so it is not saved. */
+    private transient OccupancyIndex occupancy;
+    /** Floor tiles of worldGrid with no robot on them, which spawns are picked from. Built when
+     *  first needed and kept up to date by occupancy. Saved, so that a loaded game spawns on the
+     *  same tiles as one that kept running. */
+    private FreeCellIndex freeCells;
     /** x offset of the map from the middle. */
     private int xOffset;
     /** y offset of the map from the middle. */
@@ -81,6 +112,22 @@ public class GameState implements Serializable {
     /** List of all Key objects. */
     private final List<Key> keys;
 
+    /** World that the map is a window into, or null if the map is the whole world. */
+    private ChunkedWorld chunks;
+    /** Chunk coordinates of the bottom-left chunk in the window. */
+    private int windowChunkX;
+    private int windowChunkY;
+    /** Tiles seen in chunks that were in the window before, by chunk key, with the tile at (x, y)
+     *  in the chunk stored at bit x * chunkSize + y. */
+    private HashMap<Long, BitSet> exploredChunks;
+    /** Keys in chunks outside of the window, at world coordinates. */
+    private List<Key> farKeys;
+    /** Robots in chunks outside of the window, at world coordinates. */
+    private List<Robot> farRobots;
+    /** Whether currGrid runs its fog of war in parallel on large maps, kept so that it carries
+     *  over when the window moves. */
+    private transient boolean parallelFogOfWar;
+
     /** Messages to be displayed when hurt. */
     private final List<String> harmMessages = new ArrayList<>(List.of(
             "The robot hurt you.",
@@ -98,8 +145,12 @@ public class GameState implements Serializable {
 
     /** Toggle-able setting that determines whether fog-of-war is on or off in rendering. */
     private boolean doFogOfWar = true;
-    /** Tiles that have been seen by the player. */
-    private final HashSet<TilePoint> visited;
+    /** Tiles that have been seen by the player, with the tile at (x, y) stored at bit
+     *  x * height + y. */
+    private BitSet explored;
+    /** Tiles that have been seen by the player, as saved before explored replaced it. Only set
+     *  while loading an old save, and moved into explored as soon as it is read. */
+    private HashSet<TilePoint> visited;
     /** Toggle-able setting that determines the perspective (2D for false and 2.5D for true). */
     private boolean doPerspectiveShift = false;
 
@@ -109,10 +160,11 @@ public class GameState implements Serializable {
         inputSource = input;
         doRender = render;
         worldGrid = new Grid(map);
-        currGrid = new Grid(new TETile[map.length][]);
         width = map.length;
         height = width > 0 ? map[0].length : 0;
-        copyDataMap();
+        explored = new BitSet(width * height);
+        currGrid = new LayeredGrid(worldGrid, explored);
+        occupancy = new OccupancyIndex(width, height);
         random = rand;
         seed = s;
         robots = new ArrayList<>();
@@ -122,7 +174,58 @@ public class GameState implements Serializable {
         turn = 0;
         health = 3;
         keysRetrieved = 0;
-        visited = new HashSet<>();
+    }
+
+    /** Saves explored in the world's file instead of the save, if the world is kept in one. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        BitSet seen = explored;
+        if (worldGrid.storeMask(explored)) {
+            explored = null;
+        }
+        try {
+            out.defaultWriteObject();
+        } finally {
+            explored = seen;
+        }
+    }
+
+    /** Reads explored back from the world's file if it was kept there, and moves the seen tiles
+     *  of a save written before explored was added into explored. Then rebuilds currGrid and
+     *  occupancy. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (explored == null) {
+            explored = worldGrid.loadMask();
+        }
+        if (explored == null) {
+            explored = new BitSet(width * height);
+        }
+        if (visited != null) {
+            for (TilePoint tile : visited) {
+                if (tile.x >= 0 && tile.x < width && tile.y >= 0 && tile.y < height) {
+                    explored.set(tile.x * height + tile.y);
+                }
+            }
+            visited = null;
+        }
+        if (chunks != null && farRobots == null) {
+            farRobots = new ArrayList<>();
+        }
+        currGrid = new LayeredGrid(worldGrid, explored);
+        occupancy = new OccupancyIndex(width, height);
+        if (player != null) {
+            player.setOccupancyIndex(occupancy);
+        }
+        for (Robot robot : robots) {
+            robot.setOccupancyIndex(occupancy);
+        }
+        for (Key key : keys) {
+            key.setOccupancyIndex(occupancy);
+        }
+        if (freeCells != null) {
+            freeCells.countBlockers(robots);
+            occupancy.setFreeCells(freeCells);
+        }
     }
 
     public void updateOldGameState(TERenderer renderer, InputSource input, boolean render) {
@@ -136,13 +239,16 @@ public class GameState implements Serializable {
     public void setUpWorld() {
         TilePoint playerCoord = findEmptySpot();
         player = new Player(playerCoord, character);
+        player.setOccupancyIndex(occupancy);
 
         for (int i = 0; i < ENEMIES_COUNT; i++) {
-            robots.add(new Robot(findEmptySpotForNPC()));
+            spawnRobot();
         }
 
         for (int i = 0; i < 5; i++) {
-            keys.add(new Key(findEmptySpotForNPC()));
+            Key key = new Key(findEmptySpotForNPC());
+            key.setOccupancyIndex(occupancy);
+            keys.add(key);
         }
 
         xOffset = width / 2 - playerCoord.x;
@@ -151,34 +257,200 @@ public class GameState implements Serializable {
         ter.setYOffset(yOffset);
         xOffsetShift = xOffset;
         yOffsetShift = yOffset;
+        recenterWindow();
     }
 
     /**
-     * Repeatedly generates a random x and y coordinate until one matches a floor tile that is
-     * not occupied by another creature.
+     * Makes the map a window of WINDOW_CHUNKS by WINDOW_CHUNKS chunks into a chunked world, with
+     * chunk (0, 0) at its bottom-left. The map given to the constructor must be that part of the
+     * world. Call before setUpWorld().
+     */
+    public void setChunkedWorld(ChunkedWorld world) {
+        chunks = world;
+        windowChunkX = 0;
+        windowChunkY = 0;
+        exploredChunks = new HashMap<>();
+        farKeys = new ArrayList<>();
+        farRobots = new ArrayList<>();
+    }
+
+    /**
+     * Moves the world map into a memory-mapped file, replacing the file if it exists. The map is
+     * then kept off the heap, and loading the save maps the file again instead of reading the
+     * whole map. Seen tiles are kept in the same file.
      *
-     * @return The TilePoint coordinates of the empty spot.
+     * @throws IOException If the file cannot be written.
      */
-    public TilePoint findEmptySpot() {
-        int testX;
-        int testY;
-        boolean validate;
-        do {
-            testX = RandomUtils.uniform(random, width - 1);
-            testY = RandomUtils.uniform(random, height - 1);
-            if (worldGrid.getMap()[testX][testY].character() != '·') {
-                validate = false;
-                continue;
+    public void useMappedWorld(File file) throws IOException {
+        Grid mapped = new Grid(new MappedPaletteGrid(file, worldGrid.getMap()));
+        mapped.setRoomGraph(worldGrid.getRoomGraph());
+        worldGrid = mapped;
+        currGrid = new LayeredGrid(worldGrid, explored);
+        currGrid.setParallel(parallelFogOfWar);
+        playerField = null;
+    }
+
+    /** Sets the generator for chunks of a chunked world that are not in memory, such as after
+     *  loading. Does nothing if the map is the whole world. */
+    public void setMapGenerator(MapGenerator generator) {
+        if (chunks != null) {
+            chunks.setGenerator(generator);
+        }
+    }
+
+    /**
+     * In a chunked world, moves the window so that the player is in its middle chunk, if they
+     * have left it.
+     *
+     * @return Whether the window moved.
+     */
+    private boolean recenterWindow() {
+        if (chunks == null) {
+            return false;
+        }
+        int dcx = player.getX() / chunks.getChunkSize() - WINDOW_CHUNKS / 2;
+        int dcy = player.getY() / chunks.getChunkSize() - WINDOW_CHUNKS / 2;
+        if (dcx == 0 && dcy == 0) {
+            return false;
+        }
+        shiftWindow(dcx, dcy);
+        return true;
+    }
+
+    /**
+     * Moves the window dcx chunks east and dcy chunks north. The new map is copied out of the
+     * resident chunks, generating any that are missing, and chunks far from the new window are
+     * evicted. Creatures keep their place in the world: robots and keys that end up outside the
+     * window wait in farRobots and farKeys until the window reaches them again. Seen tiles are
+     * kept by chunk in exploredChunks.
+     */
+    private void shiftWindow(int dcx, int dcy) {
+        int chunkSize = chunks.getChunkSize();
+        int dx = dcx * chunkSize;
+        int dy = dcy * chunkSize;
+        storeExplored();
+        windowChunkX += dcx;
+        windowChunkY += dcy;
+        chunks.evictFarFrom(windowChunkX + WINDOW_CHUNKS / 2, windowChunkY + WINDOW_CHUNKS / 2,
+                KEEP_CHUNK_RADIUS);
+        worldGrid = new Grid(chunks.region(windowChunkX * chunkSize, windowChunkY * chunkSize,
+                width, height));
+        explored = loadExplored();
+        currGrid = new LayeredGrid(worldGrid, explored);
+        currGrid.setParallel(parallelFogOfWar);
+        playerField = null;
+        freeCells = null;
+
+        // Creatures leave the old index before moving, since they may move off of its map.
+        player.setOccupancyIndex(null);
+        robots.forEach(robot -> robot.setOccupancyIndex(null));
+        keys.forEach(key -> key.setOccupancyIndex(null));
+        occupancy = new OccupancyIndex(width, height);
+
+        player.move(-dx, -dy);
+        player.setOccupancyIndex(occupancy);
+        int originX = windowChunkX * chunkSize;
+        int originY = windowChunkY * chunkSize;
+        shiftCreatures(keys, farKeys, dx, dy, originX, originY);
+        keys.forEach(key -> key.setOccupancyIndex(occupancy));
+        shiftCreatures(robots, farRobots, dx, dy, originX, originY);
+        for (Robot robot : robots) {
+            robot.forgetPath();
+            robot.setOccupancyIndex(occupancy);
+        }
+
+        changeXOffset(dx);
+        changeYOffset(dy);
+        xOffsetShift += dx;
+        yOffsetShift += dy;
+    }
+
+    /**
+     * Moves creatures in the window dx tiles west and dy tiles south, along with the map. Those
+     * that end up outside the window are moved to world coordinates and parked in far, and those
+     * in far that are now inside the window, whose bottom-left is (originX, originY) in the world,
+     * are moved back into near.
+     */
+    private <T extends Creature> void shiftCreatures(List<T> near, List<T> far, int dx, int dy,
+                                                     int originX, int originY) {
+        List<T> inWindow = new ArrayList<>();
+        for (T creature : near) {
+            creature.move(-dx, -dy);
+            if (inWindow(creature.getX(), creature.getY())) {
+                inWindow.add(creature);
+            } else {
+                creature.move(originX, originY);
+                far.add(creature);
             }
-            validate = true;
-            for (Creature creature : robots) {
-                if (creature.getX() == testX && creature.getY() == testY) {
-                    validate = false;
-                    break;
+        }
+        Iterator<T> farIter = far.iterator();
+        while (farIter.hasNext()) {
+            T creature = farIter.next();
+            if (inWindow(creature.getX() - originX, creature.getY() - originY)) {
+                creature.move(-originX, -originY);
+                inWindow.add(creature);
+                farIter.remove();
+            }
+        }
+        near.clear();
+        near.addAll(inWindow);
+    }
+
+    private boolean inWindow(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /** Copies the seen tiles of every chunk in the window into exploredChunks. */
+    private void storeExplored() {
+        int chunkSize = chunks.getChunkSize();
+        for (int i = 0; i < WINDOW_CHUNKS; i++) {
+            for (int j = 0; j < WINDOW_CHUNKS; j++) {
+                BitSet seen = new BitSet(chunkSize * chunkSize);
+                for (int x = 0; x < chunkSize; x++) {
+                    for (int y = 0; y < chunkSize; y++) {
+                        if (explored.get((i * chunkSize + x) * height + j * chunkSize + y)) {
+                            seen.set(x * chunkSize + y);
+                        }
+                    }
+                }
+                long key = ChunkedWorld.chunkKey(windowChunkX + i, windowChunkY + j);
+                if (seen.isEmpty()) {
+                    exploredChunks.remove(key);
+                } else {
+                    exploredChunks.put(key, seen);
                 }
             }
-        } while (!validate);
-        return new TilePoint(testX, testY);
+        }
+    }
+
+    /** Returns the seen tiles of the window, as stored in exploredChunks. */
+    private BitSet loadExplored() {
+        int chunkSize = chunks.getChunkSize();
+        BitSet windowSeen = new BitSet(width * height);
+        for (int i = 0; i < WINDOW_CHUNKS; i++) {
+            for (int j = 0; j < WINDOW_CHUNKS; j++) {
+                BitSet seen = exploredChunks.get(
+                        ChunkedWorld.chunkKey(windowChunkX + i, windowChunkY + j));
+                if (seen == null) {
+                    continue;
+                }
+                for (int bit = seen.nextSetBit(0); bit >= 0; bit = seen.nextSetBit(bit + 1)) {
+                    int x = i * chunkSize + bit / chunkSize;
+                    int y = j * chunkSize + bit % chunkSize;
+                    windowSeen.set(x * height + y);
+                }
+            }
+        }
+        return windowSeen;
+    }
+
+    /**
+     * Picks a random floor tile that is not occupied by a robot.
+     *
+     * @return The TilePoint coordinates of the empty spot.
+     */
+    public TilePoint findEmptySpot() {
+        return findEmptySpot(null, 0);
     }
 
     /**
@@ -186,13 +458,33 @@ public class GameState implements Serializable {
      * distance of the player.
      */
     public TilePoint findEmptySpotForNPC() {
-        TETile[][] worldMap = worldGrid.getMap();
-        int spawnDist = Math.min(worldMap.length, worldMap[0].length) / 4;
-        TilePoint cur;
-        do {
-            cur = findEmptySpot();
-        } while (cur.distance(player.getLoc()) < spawnDist);
-        return cur;
+        return findEmptySpot(player.getLoc(), Math.min(width, height) / 4);
+    }
+
+    /**
+     * Picks a random floor tile that is not occupied by a robot, and is at least minDist away from
+     * avoid. Tiles are drawn from freeCells, so walls, empty space and robots are never tried.
+     *
+     * @param avoid Tile to keep away from, or null for none.
+     * @throws IllegalStateException If no tile fits.
+     */
+    private TilePoint findEmptySpot(TilePoint avoid, int minDist) {
+        int cell = getFreeCells().randomCell(random, avoid, minDist);
+        if (cell < 0) {
+            throw new IllegalStateException("No empty floor tile is left to spawn on.");
+        }
+        return new TilePoint(cell / height, cell % height);
+    }
+
+    private FreeCellIndex getFreeCells() {
+        if (freeCells == null) {
+            freeCells = new FreeCellIndex(worldGrid, Robot.class);
+            for (Robot robot : robots) {
+                freeCells.occupy(robot.getX(), robot.getY());
+            }
+            occupancy.setFreeCells(freeCells);
+        }
+        return freeCells;
     }
 
     /**
@@ -201,7 +493,7 @@ public class GameState implements Serializable {
      * by 1, allowing monsters to move one step after the player moves.
      */
     public void runGame() {
-        copyDataMap();
+        resetCurrGrid();
         updateMap();
         boolean doQuit = false;
 
@@ -241,7 +533,7 @@ public class GameState implements Serializable {
                             case '0' -> toggleFogOfWar();
                             default -> { }
                         }
-                        copyDataMap();
+                        resetCurrGrid();
                         updateMap();
                     }
                     default -> { }
@@ -254,12 +546,9 @@ public class GameState implements Serializable {
         }
     }
 
-    private void copyDataMap() {
-        TETile[][] newMap = new TETile[width][height];
-        for (int i = 0; i < width; i++) {
-            newMap[i] = Arrays.copyOf(worldGrid.getMap()[i], height);
-        }
-        currGrid.setMap(newMap);
+    /** Removes everything drawn over the world map in currGrid. */
+    private void resetCurrGrid() {
+        currGrid.clearOverlay();
     }
 
     /**
@@ -273,7 +562,7 @@ public class GameState implements Serializable {
         TilePoint newLoc = new TilePoint(oldLoc);
         newLoc.moveInDir(dir, 1);
 
-        if (worldGrid.getTile(newLoc).valid()) {
+        if (worldGrid.isWalkable(newLoc)) {
             // Adjust canvas offset if the avatar is near the edge of the canvas
             if (doPerspectiveShift) {
                 fixOffsetPerspective(dir, newLoc);
@@ -291,6 +580,7 @@ public class GameState implements Serializable {
                 case '❀' -> keyCollision(newLoc);
                 default -> { }
             }
+            recenterWindow();
 
             robotsMove();
             updateMap();
@@ -305,12 +595,18 @@ public class GameState implements Serializable {
      * @param destination Point to move the avatar to.
      */
     private void moveAvatar(TilePoint destination) {
-        List<TilePoint> path = worldGrid.pathfinder(player.getLoc(), destination);
+        List<TilePoint> path = worldGrid.pathfinder(player.getLoc(), destination,
+                PathMode.HIERARCHICAL);
         path.remove(0);
         for (TilePoint tile : path) {
             currGrid.setTile(tile, Tileset.GLOW_FLOOR);
         }
+        Grid pathGrid = worldGrid;
         for (TilePoint tile : path) {
+            if (worldGrid != pathGrid) {
+                // The window moved, so the rest of the path no longer lines up with the map.
+                break;
+            }
             int dir = player.getLoc().getDirTo(tile);
             moveAvatar(dir);
             if (doRender) {
@@ -375,31 +671,31 @@ public class GameState implements Serializable {
         }
     }
 
-    /** Resolves a robot-player collision, respawning the robot after health depletes. */
+    /** Resolves a robot-player collision, respawning the robot after health depletes. If several
+     *  robots are on the tile, the one last in robots explodes. */
     private void robotCollision(TilePoint tile) {
-        Robot explodingBot = null;
-        for (Robot robot : robots) {
-            if (robot.getLoc().equals(tile)) {
-                explodingBot = robot;
-            }
-        }
+        Robot explodingBot = lastListed(robots, occupancy.creaturesAt(tile, Robot.class));
         assert explodingBot != null;
         if (doRender) {
             ter.renderPopUp(harmMessages.get(Math.min(3 - health, 2)));
         }
         health--;
         robots.remove(explodingBot);
-        robots.add(new Robot(findEmptySpotForNPC()));
+        explodingBot.setOccupancyIndex(null);
+        spawnRobot();
+    }
+
+    /** Adds a robot at an empty spot away from the player. */
+    private void spawnRobot() {
+        Robot robot = new Robot(findEmptySpotForNPC());
+        robot.setOccupancyIndex(occupancy);
+        robots.add(robot);
     }
 
-    /** Resolves key-player collision. */
+    /** Resolves key-player collision. If several keys are on the tile, the one last in keys is
+     *  found. */
     private void keyCollision(TilePoint tile) {
-        Key foundKey = null;
-        for (Key key : keys) {
-            if (key.getLoc().equals(tile)) {
-                foundKey = key;
-            }
-        }
+        Key foundKey = lastListed(keys, occupancy.creaturesAt(tile, Key.class));
         assert foundKey != null;
         if (doRender) {
             ter.renderPopUp(keyMessages.poll());
@@ -409,10 +705,30 @@ public class GameState implements Serializable {
         }
         keysRetrieved++;
         keys.remove(foundKey);
+        foundKey.setOccupancyIndex(null);
+    }
+
+    /** Returns whichever of the creatures on a tile comes last in list, or null if there are
+     *  none. Only searches list when several creatures share the tile. */
+    private static <T extends Creature> T lastListed(List<T> list, List<T> onTile) {
+        if (onTile.size() <= 1) {
+            return onTile.isEmpty() ? null : onTile.get(0);
+        }
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (onTile.contains(list.get(i))) {
+                return list.get(i);
+            }
+        }
+        return null;
     }
 
     /** Iterates through every robot's actions, then checks for player collision. */
     private void robotsMove() {
+        if (playerField == null) {
+            playerField = new FlowField(worldGrid);
+        }
+        playerField.compute(player.getLoc(), Robot.CHASE_STEPS);
+
         Robot toReplace = null;
         for (Robot robot : robots) {
             if (RandomUtils.uniform(random, 4) == 0) {
@@ -436,7 +752,7 @@ public class GameState implements Serializable {
     /** Updates the map, adjusting for fog-of-way if enabled. */
     public void updateMap() {
         if (doFogOfWar) {
-            copyDataMap();
+            resetCurrGrid();
             updateCreatures();
             updateFogOfWar();
         } else {
@@ -456,37 +772,15 @@ public class GameState implements Serializable {
     }
 
     /**
-     * Turns currMap into a grid of Tileset.NOTHING except for select tiles that are a RANGE
-     * distance away from the avatar tile.
-     *
-     * For now, has no pathfinding functionalities, meaning the avatar can see through walls.
+     * Shows currMap as Tileset.NOTHING except for select tiles that are within SIGHT_RADIUS of
+     * the avatar tile and in its line of sight, and tiles seen before. Visible tiles are found
+     * with one shadowcasting pass from the avatar, which gives the same tiles as
+     * worldGrid.sight(). Nothing is redrawn here, since currGrid applies the fog whenever a tile
+     * is read.
      */
     private void updateFogOfWar() {
-        TilePoint playerLoc = player.getLoc();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                char tileChar = currGrid.getTile(x, y).character();
-                if (tileChar == ' ') {
-                    continue;
-                }
-                TilePoint tile = new TilePoint(x, y);
-                if (playerLoc.distance(tile) > 15 || !worldGrid.sight(playerLoc, tile)) {
-                    if (visited.contains(tile)) {
-                        switch (tileChar) {
-                            case '#' -> currGrid.setTile(tile, Tileset.SEEN_WALL);
-                            case '❀' -> currGrid.setTile(tile, Tileset.SEEN_KEY);
-                            default -> currGrid.setTile(tile, Tileset.SEEN_FLOOR);
-                        }
-                    } else if (tileChar == '❀') {
-                        currGrid.setTile(tile, Tileset.GHOST_KEY);
-                    } else {
-                        currGrid.setTile(tile, Tileset.NOTHING);
-                    }
-                } else {
-                    visited.add(tile);
-                }
-            }
-        }
+        currGrid.setFogOfWar(true);
+        currGrid.updateView(player.getLoc(), SIGHT_RADIUS);
     }
 
     /** Menu page activated when ':' is pressed. Lets the user confirm a session quit by pressing
@@ -548,7 +842,8 @@ public class GameState implements Serializable {
         if (doFogOfWar) {
             updateFogOfWar();
         } else {
-            copyDataMap();
+            currGrid.setFogOfWar(false);
+            resetCurrGrid();
             updateCreatures();
         }
     }
@@ -570,11 +865,18 @@ public class GameState implements Serializable {
         if (doFogOfWar) {
             updateFogOfWar();
         } else {
-            copyDataMap();
+            resetCurrGrid();
             updateCreatures();
         }
     }
 
+    /** Turns the parallel fog of war of currGrid on or off for maps of at least
+     *  LayeredGrid.PARALLEL_THRESHOLD tiles. */
+    public void setParallelFogOfWar(boolean parallel) {
+        parallelFogOfWar = parallel;
+        currGrid.setParallel(parallel);
+    }
+
     public Player getPlayer() {
         return player;
     }
@@ -595,12 +897,21 @@ public class GameState implements Serializable {
         return worldGrid;
     }
 
-    public Grid getCurrGrid() {
+    public FlowField getPlayerField() {
+        return playerField;
+    }
+
+    public OccupancyIndex getOccupancy() {
+        return occupancy;
+    }
+
+    public LayeredGrid getCurrGrid() {
         return currGrid;
     }
 
+    /** Returns a copy of the map being displayed, with every layer applied. */
     public TETile[][] getCurrMap() {
-        return currGrid.getMap();
+        return currGrid.toArray();
     }
 
     public TETile[][] getWorldMap() {
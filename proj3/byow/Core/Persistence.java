@@ -12,6 +12,11 @@ public class Persistence implements Serializable {
     /** File path and name of the file containing leaderboard information. If no file exists,
      * the leaderboard is empty. */
     public static final File LEADERBOARD_FILE = new File("leaderboard.txt");
+    /** File path and name of the memory-mapped map of a world saved with Engine.MAPPED_WORLD on.
+     *  The save in DATA_FILE only holds the path to it. */
+    public static final File WORLD_FILE = new File("byowworld.dat");
+    /** Directory of generated worlds kept by a WorldCache when Engine.CACHE_WORLDS is on. */
+    public static final File WORLD_CACHE_DIRECTORY = new File("worldcache");
 
     /**
      * Attempts to write GameState to file, if one exists with a generated worldMap.
@@ -19,7 +24,7 @@ public class Persistence implements Serializable {
      * Code credited to P. N. Hilfinger from Gitlet project.
      */
     public static void writeData(GameState data) {
-        if (data == null || data.getWorldMap() == null) {
+        if (data == null || data.getWorldGrid() == null) {
             return;
         }
         try {
@@ -88,9 +93,10 @@ public class Persistence implements Serializable {
     }
 
     /**
-     * Erases the save file if one exists.
+     * Erases the save file, and the world file of a mapped world, if they exist.
      */
     public static void eraseData() {
-        boolean res = DATA_FILE.delete();
+        DATA_FILE.delete();
+        WORLD_FILE.delete();
     }
 }
@@ -0,0 +1,251 @@
+package byow.Core;
+
+import byow.TileEngine.TETile;
+import byow.WorldGen.MapGenerator;
+import byow.gridsys.RoomGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Directory of generated worlds, so that a seed that was generated before is read back instead of
+ * generated again. A world is found by its key: the class and version of its generator, its width
+ * and height, and its seed. Each world is one file named after the SHA-256 hash of its key, and
+ * the key is also kept in the file to make sure it is the right world.
+ *
+ * A file holds a header (a magic number, a format version, the width, the height and the key),
+ * then one palette index byte per tile, then the palette, the RoomGraph and the Random left by
+ * generation as serialized objects. Palette tiles that are copies of Tileset constants are read
+ * back as the constants themselves. Files are memory-mapped read-only to be read, and every tile
+ * is copied out of the mapping into the returned map, so nothing keeps using the mapping once
+ * read() returns.
+ *
+ * The directory is kept under maxBytes by deleting the least recently used worlds first. A file's
+ * last modified time is updated whenever it is read, so it doubles as its last use. Since the cache
+ * only saves time, files that cannot be read are deleted, and worlds that cannot be written are
+ * left out, without failing the game.
+ *
+ * @author Nicholas Nguyen
+ */
+public class WorldCache {
+
+    /** "BYWC" in ASCII. */
+    private static final int MAGIC = 0x42595743;
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".world";
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory Directory the worlds are kept in. Made when the first world is stored.
+     * @param maxBytes Most bytes of worlds kept in the directory.
+     */
+    public WorldCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Returns the cached world of a seed, or null if it is not cached or cannot be read. */
+    public WorldPregenerator.World get(MapGenerator generator, long seed, int width, int height) {
+        String key = key(generator, seed, width, height);
+        File file = fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            WorldPregenerator.World world = read(file, key, width, height);
+            if (world != null) {
+                file.setLastModified(System.currentTimeMillis());
+                return world;
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException
+                 | BufferUnderflowException exception) {
+            // Falls through to deleting the file.
+        }
+        // Some systems refuse to delete a file that is still mapped, until the mapping is
+        // garbage collected.
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+        return null;
+    }
+
+    /**
+     * Stores the world of a seed, then deletes the least recently used worlds until the directory
+     * fits in maxBytes. Must be called before the world's Random is used again, since the cached
+     * Random has to match the one generation left.
+     */
+    public void put(MapGenerator generator, long seed, WorldPregenerator.World world) {
+        TETile[][] map = world.map();
+        int width = map.length;
+        int height = width > 0 ? map[0].length : 0;
+        String key = key(generator, seed, width, height);
+        try {
+            byte[] bytes = encode(key, world, width, height);
+            if (bytes == null) {
+                return;
+            }
+            Files.createDirectories(directory.toPath());
+            File temp = File.createTempFile("world", ".tmp", directory);
+            Files.write(temp.toPath(), bytes);
+            try {
+                Files.move(temp.toPath(), fileOf(key).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temp.toPath(), fileOf(key).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException exception) {
+            System.out.println("Error caching world:\r\n" + exception.getMessage());
+            return;
+        }
+        evict();
+    }
+
+    /** Deletes the least recently used worlds until the directory fits in maxBytes. */
+    private void evict() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        List<File> byLastUse = new ArrayList<>(Arrays.asList(files));
+        for (File file : byLastUse) {
+            total += file.length();
+        }
+        byLastUse.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : byLastUse) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                total -= size;
+            }
+        }
+    }
+
+    /**
+     * Returns the contents of a file for a world, or null if the world has more tiles in its
+     * palette than fit in a byte.
+     */
+    private static byte[] encode(String key, WorldPregenerator.World world, int width,
+                                 int height) throws IOException {
+        HashMap<TETile, Integer> index = new HashMap<>();
+        List<TETile> palette = new ArrayList<>();
+        byte[] cells = new byte[width * height];
+        TETile[][] map = world.map();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                Integer paletteIndex = index.get(map[x][y]);
+                if (paletteIndex == null) {
+                    if (palette.size() == 256) {
+                        return null;
+                    }
+                    paletteIndex = palette.size();
+                    index.put(map[x][y], paletteIndex);
+                    palette.add(map[x][y]);
+                }
+                cells[x * height + y] = (byte) (int) paletteIndex;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(width);
+        out.writeInt(height);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        out.write(cells);
+        ObjectOutputStream objects = new ObjectOutputStream(out);
+        objects.writeObject(palette.toArray(new TETile[0]));
+        objects.writeObject(world.roomGraph());
+        objects.writeObject(world.random());
+        objects.close();
+        return bytes.toByteArray();
+    }
+
+    /** Reads a world from a file, or returns null if the file holds a different world. */
+    private static WorldPregenerator.World read(File file, String key, int width, int height)
+            throws IOException, ClassNotFoundException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT || buffer.getInt() != width
+                || buffer.getInt() != height) {
+            return null;
+        }
+        byte[] storedKey = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(storedKey);
+        if (!key.equals(new String(storedKey, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        int cells = buffer.position();
+        if (buffer.remaining() < width * height) {
+            return null;
+        }
+        buffer.position(cells + width * height);
+        byte[] tail = new byte[buffer.remaining()];
+        buffer.get(tail);
+        ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(tail));
+        TETile[] palette = (TETile[]) objects.readObject();
+        RoomGraph roomGraph = (RoomGraph) objects.readObject();
+        Random random = (Random) objects.readObject();
+
+        TETile[][] map = new TETile[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int paletteIndex = buffer.get(cells + x * height + y) & 0xFF;
+                if (paletteIndex >= palette.length) {
+                    return null;
+                }
+                map[x][y] = palette[paletteIndex];
+            }
+        }
+        return new WorldPregenerator.World(map, roomGraph, random);
+    }
+
+    private File fileOf(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name + SUFFIX);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available.", exception);
+        }
+    }
+
+    private static String key(MapGenerator generator, long seed, int width, int height) {
+        return generator.getClass().getName() + "|" + generator.getVersion() + "|" + width + "|"
+                + height + "|" + seed;
+    }
+}
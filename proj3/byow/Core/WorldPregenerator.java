@@ -0,0 +1,145 @@
+package byow.Core;
+
+import byow.TileEngine.TETile;
+import byow.WorldGen.MapGenerator;
+import byow.gridsys.RoomGraph;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Generates a world on a background thread before it is asked for, such as while the player is
+ * still in the main menu or typing a seed. Only the most recently asked for seed is kept: asking
+ * for another seed cancels the previous world if it has not started, and drops it otherwise.
+ *
+ * A prepared world is the same as one generated on the spot, since it is generated with a new
+ * generator and a Random seeded the same way, and the Random is handed over along with the map
+ * in the state generation left it in.
+ *
+ * Worlds are generated on a single daemon thread, so a world that is being generated never
+ * keeps the program from exiting. If a WorldCache is given, it is checked before generating, but
+ * a generated world is only stored in it once take() hands it over. Seeds prepared while the
+ * player is still typing are never stored, so the cache only fills with worlds that were played.
+ *
+ * @author Nicholas Nguyen
+ */
+public class WorldPregenerator {
+
+    /** A generated map along with what a GameState needs to carry on from where generation
+     *  left off. */
+    public record World(TETile[][] map, RoomGraph roomGraph, Random random) { }
+
+    /** A world along with the generator that made it, and whether it was read from the cache. */
+    private record Prepared(World world, MapGenerator generator, boolean cached) {
+
+        /** Stores the world in a cache unless it was read from one, and returns it. */
+        World store(WorldCache cache, long seed) {
+            if (cache != null && !cached) {
+                cache.put(generator, seed, world);
+            }
+            return world;
+        }
+    }
+
+    private final Supplier<MapGenerator> factory;
+    private final int width;
+    private final int height;
+    /** Cache of generated worlds, or null if worlds are not cached. */
+    private final WorldCache cache;
+    private final ExecutorService executor;
+
+    /** Seed of the world being prepared. */
+    private long pendingSeed;
+    /** World being prepared, or null if none has been asked for. */
+    private Future<Prepared> pending;
+
+    /**
+     * @param factory Makes a new generator for each world, since generators keep state while
+     *                generating.
+     * @param cache Cache of generated worlds, or null to always generate them.
+     */
+    public WorldPregenerator(Supplier<MapGenerator> factory, int width, int height,
+                             WorldCache cache) {
+        this.factory = factory;
+        this.width = width;
+        this.height = height;
+        this.cache = cache;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "World pregenerator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Starts generating the world of a seed in the background, unless it already is. */
+    public void prepare(long seed) {
+        if (pending != null && pendingSeed == seed) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        MapGenerator generator = factory.get();
+        pendingSeed = seed;
+        pending = executor.submit(() -> build(generator, seed, width, height, cache));
+    }
+
+    /** Returns whether the world of a seed is done generating. */
+    public boolean isReady(long seed) {
+        return pending != null && pendingSeed == seed && pending.isDone();
+    }
+
+    /**
+     * Returns the world of a seed, waiting for it to finish generating, and starting it first if
+     * it was not being prepared. A newly generated world is stored in the cache before it is
+     * returned, while its Random is still as generation left it.
+     *
+     * @throws IllegalStateException If generation failed or the wait was interrupted.
+     */
+    public World take(long seed) {
+        prepare(seed);
+        Future<Prepared> world = pending;
+        pending = null;
+        try {
+            return world.get().store(cache, seed);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating a world.", exception);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Could not generate a world.", exception.getCause());
+        }
+    }
+
+    /**
+     * Generates the world of a seed on this thread with the given generator, or reads it from the
+     * cache if it was generated before, and stores a newly generated world in the cache. A world
+     * prepared in the background is made the same way.
+     *
+     * @param cache Cache of generated worlds, or null to always generate the world.
+     */
+    public static World generate(MapGenerator generator, long seed, int width, int height,
+                                 WorldCache cache) {
+        return build(generator, seed, width, height, cache).store(cache, seed);
+    }
+
+    /** Reads the world of a seed from the cache, or generates it, without storing it. */
+    private static Prepared build(MapGenerator generator, long seed, int width, int height,
+                                  WorldCache cache) {
+        if (cache != null) {
+            World cached = cache.get(generator, seed, width, height);
+            if (cached != null) {
+                return new Prepared(cached, generator, true);
+            }
+        }
+        Random random = new Random(seed);
+        TETile[][] map = generator.generate(width, height, random);
+        return new Prepared(new World(map, generator.getRoomGraph(), random), generator, false);
+    }
+}
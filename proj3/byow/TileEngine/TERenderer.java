@@ -3,7 +3,7 @@ package byow.TileEngine;
 import byow.Core.GameState;
 import byow.Core.Leaderboard;
 import byow.Core.Persistence;
-import byow.gridsys.Grid;
+import byow.gridsys.LayeredGrid;
 import byow.gridsys.TilePoint;
 import edu.princeton.cs.algs4.StdDraw;
 
@@ -169,6 +169,19 @@ public class TERenderer {
         return 0;
     }
 
+    /**
+     * Loading screen shown while a new world is still being generated.
+     *
+     * @param frame Number of frames shown so far, used to animate the dots.
+     */
+    public void renderGenerating(int frame) {
+        StdDraw.clear(Color.BLACK);
+        doSetFont("SansSerif", Font.BOLD, 25, Color.WHITE);
+        StdDraw.text(0, 30, "Generating world" + ".".repeat(frame / (FRAME_RATE / 2) % 4));
+        StdDraw.show();
+        StdDraw.pause(1000 / FRAME_RATE);
+    }
+
     /**
      * Leaderboard interface.
      */
@@ -283,7 +296,7 @@ public class TERenderer {
     }
 
     /**
-     * Takes in a 2d array of TETile objects and renders the 2d array to the screen, starting from
+     * Takes in the current map of the game and renders each tile to the screen, starting from
      * xOffset and yOffset.
      *
      * If the array is an NxM array, then the element displayed at positions would be as follows,
@@ -306,15 +319,16 @@ public class TERenderer {
      */
     public TilePoint renderGame(GameState gameState) {
         TilePoint mouseHover = null;
-        TETile[][] world = gameState.getCurrMap();
-        int numXTiles = world.length;
-        int numYTiles = world[0].length;
+        LayeredGrid world = gameState.getCurrGrid();
+        int numXTiles = world.getWidth();
+        int numYTiles = world.getHeight();
         StdDraw.clear(new Color(0, 0, 0));
         Font font = new Font("Monaco", Font.BOLD, 14);
         StdDraw.setFont(font);
         for (int x = 0; x < numXTiles; x++) {
             for (int y = numYTiles - 1; y >= 0; y--) {
-                if (world[x][y] == null) {
+                TETile tile = world.getTile(x, y);
+                if (tile == null) {
                     throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
                             + " is null.");
                 }
@@ -327,7 +341,7 @@ public class TERenderer {
                             height / 2.0) && mouseInDiamond(xCoord, yCoord)) {
                         mouseHover = new TilePoint(x, y);
                     }
-                    world[x][y].drawPerspective(xCoord, yCoord);
+                    tile.drawPerspective(xCoord, yCoord);
                 } else {
                     int xCoord = (x - numXTiles / 2 + xOffset) * TILE_SIZE;
                     int yCoord = (y - numYTiles / 2 + yOffset) * TILE_SIZE;
@@ -335,7 +349,7 @@ public class TERenderer {
                             height / 2.0) && mouseInSquare(xCoord, yCoord)) {
                         mouseHover = new TilePoint(x, y);
                     }
-                    world[x][y].draw(xCoord, yCoord);
+                    tile.draw(xCoord, yCoord);
                 }
             }
         }
@@ -356,7 +370,7 @@ public class TERenderer {
         StdDraw.text(x, y - 50, "HP: " + gameState.getHealth() + " / 3");
         StdDraw.text(x, y - 130, "Turn " + gameState.getTurn());
         if (mouseHover != null) {
-            String description = Grid.tileAt(world, mouseHover).description();
+            String description = world.getTile(mouseHover).description();
             StdDraw.text(x, y - 200, description);
         }
         StdDraw.picture(x, y - 260, "byow/textures/key_clear.png");
@@ -371,7 +385,7 @@ public class TERenderer {
         StdDraw.show();
         StdDraw.pause(1000 / FRAME_RATE);
         if (StdDraw.isMousePressed() && mouseHover != null
-                && Grid.tileAt(world, mouseHover).valid()) {
+                && world.getTile(mouseHover).valid()) {
             return mouseHover;
         }
         return null;
@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.io.File;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.Random;
 
 import edu.princeton.cs.algs4.StdDraw;
@@ -24,6 +25,8 @@ import byow.Core.RandomUtils;
  */
 
 public class TETile implements Serializable {
+    /** Pinned so that saves written before methods were added can still be read. */
+    private static final long serialVersionUID = -3529015918780148836L;
     private static final File texture = new File("byow", "textures");
     private final char character; // Do not rename character or the autograder will break.
     private final Color textColor;
@@ -178,6 +181,26 @@ public class TETile implements Serializable {
         return description;
     }
 
+    /**
+     * Returns whether the given tile is drawn exactly like this one, even if it is a different
+     * object, such as a copy of this tile that was saved and loaded.
+     * @param other the tile to compare to
+     */
+    public boolean looksLike(TETile other) {
+        return other == this || other != null && character == other.character
+                && Objects.equals(textColor, other.textColor)
+                && Objects.equals(backgroundColor, other.backgroundColor)
+                && Objects.equals(description, other.description)
+                && Objects.equals(fileName, other.fileName);
+    }
+
+    /** Replaces a loaded copy of a Tileset constant with the constant itself, so that tiles read
+     *  from a save or a cached world can still be compared to Tileset constants with ==. */
+    private Object readResolve() {
+        TETile constant = Tileset.constantLike(this);
+        return constant != null ? constant : this;
+    }
+
     /**
      * Creates a copy of the given tile with a slightly different text color. The new
      * color will have a red value that is within dr of the current red value,
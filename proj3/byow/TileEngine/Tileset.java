@@ -68,6 +68,19 @@ public class Tileset {
             "mountain");
     public static final TETile TREE = new TETile('♠', Color.green, Color.black,
             "tree");
-}
 
+    /** Every tile above, for finding the constant that a loaded tile is a copy of. */
+    private static final TETile[] ALL = {PLAYER_RIGHT, PLAYER_LEFT, ROBOT_NEUTRAL, ROBOT_ANGRY,
+        KEY, SEEN_KEY, GHOST_KEY, WALL, SEEN_WALL, FLOOR, SEEN_FLOOR, GLOW_FLOOR, NOTHING, GRASS,
+        WATER, FLOWER, LOCKED_DOOR, UNLOCKED_DOOR, SAND, MOUNTAIN, TREE};
 
+    /** Returns the tile above that looks like the given tile, or null if there is none. */
+    static TETile constantLike(TETile tile) {
+        for (TETile constant : ALL) {
+            if (constant.looksLike(tile)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+}
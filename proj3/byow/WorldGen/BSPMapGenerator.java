@@ -0,0 +1,266 @@
+package byow.WorldGen;
+
+import byow.Core.RandomUtils;
+import byow.TileEngine.TETile;
+import byow.TileEngine.Tileset;
+import byow.gridsys.RoomGraph;
+import byow.gridsys.TilePoint;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Binary Space Partition Map Generator. This algorithm splits the map in two along its longer
+ * side at a random point, then splits each half the same way, until every piece (leaf) is at most
+ * MAX_LEAF tiles a side. Each leaf gets one room of random size and position inside it, so rooms
+ * never overlap and no room is ever rejected.
+ *
+ * Each split then joins its two halves with a corridor between a room on each side, which bends
+ * once at a random corner. Every split picks one of its two rooms to stand for it in the split
+ * above, so the corridors form a tree over the rooms and every room is connected without any
+ * checks or restarts. Corridors may cut through other rooms on their way, which opens doors in
+ * them. Finally, every empty tile next to a floor tile becomes a wall.
+ *
+ * Every split is visited once and every corridor tile is carved once, so the work grows with the
+ * number of rooms and the length of the corridors, rather than with how full the map gets.
+ *
+ * Rooms are recorded in a RoomGraph, along with a portal wherever a corridor leaves one room and
+ * enters the next, including rooms it only cuts through.
+ *
+ * @author Nicholas Nguyen
+ */
+public class BSPMapGenerator implements MapGenerator {
+
+    /** Leaves are split until they are at most this many tiles a side. */
+    private static final int MAX_LEAF = 16;
+    /** Leaves are never split into pieces less than this many tiles a side. */
+    private static final int MIN_LEAF = 8;
+    /** Smallest width and height of a room, inclusive of the walls. */
+    private static final int MIN_ROOM = 5;
+    /** Largest width and height of a room, inclusive of the walls. */
+    private static final int MAX_ROOM = 15;
+    /** Version of the maps this generator makes. Change it whenever a seed would make a
+     *  different map. */
+    private static final String VERSION = "1";
+
+    /** The Random object associated with the given seed, used for pseudo-random generation. */
+    private Random rand;
+    /** The width of the map. */
+    private int width;
+    /** The height of the map. */
+    private int height;
+    /** 2-dimensional array of TETiles, representing the world map. */
+    private TETile[][] worldMap;
+    /** Rooms of the map, by room number - 1. */
+    private List<RoomGraph.Room> rooms;
+    /** Rooms and hallways of the most recently generated map. */
+    private RoomGraph roomGraph;
+    /** Metrics of the most recent call to generate(). */
+    private GenerationMetrics metrics;
+
+    /** 2-dimensional array that records what was generated on each tile. 0 indicates an empty
+     * space, -1 indicates a hallway. Rooms are indicated by their room number. */
+    private int[][] intMap;
+
+    /**
+     * Generates a functional map using a provided width, height, and pseudo-random object,
+     * and sets it as its worldMap.
+     *
+     * @throws IllegalArgumentException If the map is too small to hold a room.
+     */
+    @Override
+    public TETile[][] generate(int w, int h, Random r) {
+        if (w < MIN_ROOM || h < MIN_ROOM) {
+            throw new IllegalArgumentException("A " + w + " by " + h
+                    + " map is too small to hold a room.");
+        }
+        long start = System.nanoTime();
+        width = w;
+        height = h;
+        rand = r;
+        worldMap = new TETile[w][h];
+        intMap = new int[w][h];
+        rooms = new ArrayList<>();
+        roomGraph = new RoomGraph(w, h);
+
+        // Sets the backdrop of the worldMap as NOTHING tiles.
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                worldMap[x][y] = Tileset.NOTHING;
+            }
+        }
+
+        partition(0, 0, w - 1, h - 1);
+        buildWalls();
+        metrics = new GenerationMetrics(0, 0, 0, System.nanoTime() - start);
+        return worldMap;
+    }
+
+    /**
+     * Splits the leaf spanning west to east and south to north until its pieces are small enough,
+     * builds a room in each piece, and joins the two halves of every split with a corridor.
+     * Returns the number of the room picked to stand for the leaf.
+     */
+    private int partition(int west, int south, int east, int north) {
+        int leafWidth = east - west + 1;
+        int leafHeight = north - south + 1;
+        boolean splitX = leafWidth > MAX_LEAF && (leafWidth >= leafHeight
+                || leafHeight <= MAX_LEAF);
+        boolean splitY = !splitX && leafHeight > MAX_LEAF;
+        if (!splitX && !splitY) {
+            return buildRoom(west, south, east, north);
+        }
+        int first;
+        int second;
+        if (splitX) {
+            int cut = west + RandomUtils.uniform(rand, MIN_LEAF, leafWidth - MIN_LEAF + 1);
+            first = partition(west, south, cut - 1, north);
+            second = partition(cut, south, east, north);
+        } else {
+            int cut = south + RandomUtils.uniform(rand, MIN_LEAF, leafHeight - MIN_LEAF + 1);
+            first = partition(west, south, east, cut - 1);
+            second = partition(west, cut, east, north);
+        }
+        buildCorridor(first, second);
+        return RandomUtils.bernoulli(rand) ? first : second;
+    }
+
+    /** Builds a room of random size and position inside a leaf and returns its room number. */
+    private int buildRoom(int west, int south, int east, int north) {
+        int roomWidth = RandomUtils.uniform(rand, MIN_ROOM,
+                Math.min(east - west + 1, MAX_ROOM) + 1);
+        int roomHeight = RandomUtils.uniform(rand, MIN_ROOM,
+                Math.min(north - south + 1, MAX_ROOM) + 1);
+        int roomWest = west + RandomUtils.uniform(rand, east - west + 2 - roomWidth);
+        int roomSouth = south + RandomUtils.uniform(rand, north - south + 2 - roomHeight);
+        RoomGraph.Room room = new RoomGraph.Room(roomWest, roomSouth, roomWest + roomWidth - 1,
+                roomSouth + roomHeight - 1);
+        rooms.add(room);
+        roomGraph.addRoom(room.west(), room.south(), room.east(), room.north());
+        int roomNum = rooms.size();
+        for (int x = room.west(); x <= room.east(); x++) {
+            for (int y = room.south(); y <= room.north(); y++) {
+                intMap[x][y] = roomNum;
+                if (x == room.west() || x == room.east() || y == room.north()
+                        || y == room.south()) {
+                    worldMap[x][y] = Tileset.WALL;
+                } else {
+                    worldMap[x][y] = Tileset.FLOOR;
+                }
+            }
+        }
+        return roomNum;
+    }
+
+    /**
+     * Carves a 1-wide corridor of floor from a random tile inside one room to a random tile inside
+     * another, going along one axis and then the other. Adds a portal to the RoomGraph each time
+     * the corridor leaves a room and enters another one.
+     */
+    private void buildCorridor(int roomNum1, int roomNum2) {
+        TilePoint from = randomInside(rooms.get(roomNum1 - 1));
+        TilePoint to = randomInside(rooms.get(roomNum2 - 1));
+        boolean horizontalFirst = RandomUtils.bernoulli(rand);
+        TilePoint corner = horizontalFirst ? new TilePoint(to.x, from.y)
+                : new TilePoint(from.x, to.y);
+
+        int lastRoom = roomNum1;
+        TilePoint lastDoor = new TilePoint(from);
+        TilePoint tile = new TilePoint(from);
+        for (TilePoint target : new TilePoint[]{corner, to}) {
+            while (true) {
+                int room = intMap[tile.x][tile.y];
+                if (room > 0) {
+                    if (room != lastRoom) {
+                        roomGraph.addPortal(lastRoom - 1, lastDoor, room - 1, tile);
+                        lastRoom = room;
+                    }
+                    lastDoor.setLocation(tile);
+                } else {
+                    intMap[tile.x][tile.y] = -1;
+                }
+                worldMap[tile.x][tile.y] = Tileset.FLOOR;
+                if (tile.equals(target)) {
+                    break;
+                }
+                tile.changePos(Integer.signum(target.x - tile.x),
+                        Integer.signum(target.y - tile.y));
+            }
+        }
+    }
+
+    /** Returns a random tile inside a room's walls. */
+    private TilePoint randomInside(RoomGraph.Room room) {
+        return new TilePoint(RandomUtils.uniform(rand, room.west() + 1, room.east()),
+                RandomUtils.uniform(rand, room.south() + 1, room.north()));
+    }
+
+    /** Turns every NOTHING tile next to a floor tile, diagonals included, into a wall. */
+    private void buildWalls() {
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (worldMap[x][y] != Tileset.FLOOR) {
+                    continue;
+                }
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                    for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                        if (worldMap[nx][ny] == Tileset.NOTHING) {
+                            worldMap[nx][ny] = Tileset.WALL;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the intMap
+     */
+    @Override
+    public int[][] getIntMap() {
+        return intMap;
+    }
+
+    /**
+     * Retrieves the rooms and hallways of the most recently generated map.
+     */
+    @Override
+    public RoomGraph getRoomGraph() {
+        return roomGraph;
+    }
+
+    /**
+     * Retrieves the metrics of the most recent call to generate(). This generator never restarts,
+     * repairs or drops anything, so only the time is ever set.
+     */
+    @Override
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getVersion() {
+        return VERSION;
+    }
+
+    /**
+     * Returns a TETile[][] map using a intMap associated with the object's worldMap. Used
+     * for testing purposes.
+     */
+    @Override
+    public TETile[][] getNumMap() {
+        TETile[][] resMap = new TETile[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                char thisChar = (char) ('a' + intMap[x][y] - 1);
+                Color bgCol = thisChar == '`' ? new Color(0, 0, 0)
+                        : new Color(59, 123, 134);
+                resMap[x][y] = new TETile(thisChar, new Color(255, 255, 255),
+                        bgCol, "debug");
+            }
+        }
+        return resMap;
+    }
+}
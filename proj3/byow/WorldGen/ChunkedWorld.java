@@ -0,0 +1,244 @@
+package byow.WorldGen;
+
+import byow.TileEngine.TETile;
+import byow.TileEngine.Tileset;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * World with no edges, split into square chunks of chunkSize tiles a side. A chunk is only
+ * generated once something asks for one of its tiles, by running a MapGenerator on a Random
+ * seeded from the world seed and the chunk's coordinates, so the same chunk always comes out the
+ * same no matter which chunks were made before it.
+ *
+ * Each pair of neighboring chunks shares a gate: a tile on their common edge, picked from the seed
+ * and the pair's coordinates, which both chunks carve a corridor through. Each corridor runs
+ * straight in from the edge until it touches a floor tile, so every chunk is connected to its
+ * neighbors no matter how the generator laid out its rooms.
+ *
+ * Generated chunks are kept in an LRU cache of at most maxResident chunks, and evictFarFrom()
+ * drops the ones far from the player, so memory depends on how much of the world is near the
+ * player rather than on how far they have gone. Tiles use world coordinates, which can be
+ * negative; chunk (cx, cy) holds x from cx * chunkSize to (cx + 1) * chunkSize - 1, and likewise
+ * for y.
+ *
+ * @author Nicholas Nguyen
+ */
+public class ChunkedWorld implements Serializable {
+
+    /** Pinned so that saves keep loading after fields are added. */
+    private static final long serialVersionUID = -4732453386044805201L;
+
+    /** Directions of the gates a chunk owns. The gates on its west and south edges are owned by
+     *  its west and south neighbors. */
+    private static final int EAST_GATE = 0;
+    private static final int NORTH_GATE = 1;
+
+    private final long seed;
+    private final int chunkSize;
+    private final int maxResident;
+    /** Generator used for each chunk. Set again after loading, so it is not saved. */
+    private transient MapGenerator generator;
+    /** Generated chunks by chunk key, least recently used first. Not saved, since every chunk can
+     *  be generated again. */
+    private transient LinkedHashMap<Long, TETile[][]> resident;
+    /** Number of chunks generated so far, including ones generated again after eviction. */
+    private transient int generatedCount;
+
+    /**
+     * @param generator Generator for the rooms and hallways inside each chunk.
+     * @param seed Seed of the whole world.
+     * @param chunkSize Width and height of a chunk in tiles.
+     * @param maxResident Most chunks kept in memory at once.
+     */
+    public ChunkedWorld(MapGenerator generator, long seed, int chunkSize, int maxResident) {
+        if (chunkSize < 8) {
+            throw new IllegalArgumentException("Chunks must be at least 8 tiles wide.");
+        }
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("At least one chunk must fit in memory.");
+        }
+        this.generator = generator;
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.maxResident = maxResident;
+    }
+
+    /** Sets the generator for chunks that are not resident yet, such as after loading. It should
+     *  be the same kind of generator that made the world, or new chunks will not match. */
+    public void setGenerator(MapGenerator generator) {
+        this.generator = generator;
+    }
+
+    /** Returns the tile at (x, y) in world coordinates, generating its chunk if needed. */
+    public TETile getTile(int xCoord, int yCoord) {
+        TETile[][] chunk = getChunk(Math.floorDiv(xCoord, chunkSize),
+                Math.floorDiv(yCoord, chunkSize));
+        return chunk[Math.floorMod(xCoord, chunkSize)][Math.floorMod(yCoord, chunkSize)];
+    }
+
+    /**
+     * Returns a new map of the width by height tiles whose bottom-left corner is (x, y) in world
+     * coordinates, generating the chunks under it if needed.
+     */
+    public TETile[][] region(int xCoord, int yCoord, int width, int height) {
+        TETile[][] map = new TETile[width][height];
+        int firstCX = Math.floorDiv(xCoord, chunkSize);
+        int lastCX = Math.floorDiv(xCoord + width - 1, chunkSize);
+        int firstCY = Math.floorDiv(yCoord, chunkSize);
+        int lastCY = Math.floorDiv(yCoord + height - 1, chunkSize);
+        for (int cx = firstCX; cx <= lastCX; cx++) {
+            for (int cy = firstCY; cy <= lastCY; cy++) {
+                TETile[][] chunk = getChunk(cx, cy);
+                int minX = Math.max(xCoord, cx * chunkSize);
+                int maxX = Math.min(xCoord + width, (cx + 1) * chunkSize);
+                int minY = Math.max(yCoord, cy * chunkSize);
+                int maxY = Math.min(yCoord + height, (cy + 1) * chunkSize);
+                for (int x = minX; x < maxX; x++) {
+                    System.arraycopy(chunk[x - cx * chunkSize], minY - cy * chunkSize,
+                            map[x - xCoord], minY - yCoord, maxY - minY);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Drops every resident chunk more than radius chunks away from chunk (cx, cy), counting
+     * diagonal steps as one.
+     */
+    public void evictFarFrom(int cx, int cy, int radius) {
+        if (resident == null) {
+            return;
+        }
+        Iterator<Long> keys = resident.keySet().iterator();
+        while (keys.hasNext()) {
+            long key = keys.next();
+            int keyX = (int) (key >> 32);
+            int keyY = (int) key;
+            if (Math.max(Math.abs(keyX - cx), Math.abs(keyY - cy)) > radius) {
+                keys.remove();
+            }
+        }
+    }
+
+    /** Returns whether chunk (cx, cy) is in memory. */
+    public boolean isResident(int cx, int cy) {
+        return resident != null && resident.containsKey(chunkKey(cx, cy));
+    }
+
+    public int getResidentCount() {
+        return resident == null ? 0 : resident.size();
+    }
+
+    public int getGeneratedCount() {
+        return generatedCount;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** Returns chunk (cx, cy), generating it if it is not resident. */
+    private TETile[][] getChunk(int cx, int cy) {
+        if (resident == null) {
+            resident = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, TETile[][]> eldest) {
+                    return size() > maxResident;
+                }
+            };
+        }
+        long key = chunkKey(cx, cy);
+        TETile[][] chunk = resident.get(key);
+        if (chunk == null) {
+            chunk = generateChunk(cx, cy);
+            resident.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Generates chunk (cx, cy) and carves its four gates. If a corridor crosses the whole chunk
+     * without touching a floor tile, the chunk is generated again with the same Random, so the
+     * result still only depends on the seed and the chunk's coordinates.
+     *
+     * @throws IllegalStateException If no generator is set.
+     */
+    private TETile[][] generateChunk(int cx, int cy) {
+        if (generator == null) {
+            throw new IllegalStateException("No MapGenerator is set for this ChunkedWorld.");
+        }
+        generatedCount++;
+        Random random = new Random(mix(seed, cx, cy, -1));
+        int last = chunkSize - 1;
+        while (true) {
+            TETile[][] chunk = generator.generate(chunkSize, chunkSize, random);
+            boolean connected = carveGate(chunk, last, gate(cx, cy, EAST_GATE), -1, 0)
+                    && carveGate(chunk, 0, gate(cx - 1, cy, EAST_GATE), 1, 0)
+                    && carveGate(chunk, gate(cx, cy, NORTH_GATE), last, 0, -1)
+                    && carveGate(chunk, gate(cx, cy - 1, NORTH_GATE), 0, 0, 1);
+            if (connected) {
+                return chunk;
+            }
+        }
+    }
+
+    /** Returns the position along the edge of the gate that chunk (cx, cy) owns in a direction.
+     *  Gates stay two tiles away from corners, so their walls fit in the chunk. */
+    private int gate(int cx, int cy, int dir) {
+        Random random = new Random(mix(seed, cx, cy, dir));
+        return 2 + random.nextInt(chunkSize - 4);
+    }
+
+    /**
+     * Carves a corridor of floor from the edge tile (x, y) in the direction (dx, dy), walling in
+     * its sides, until the corridor touches a floor tile. Returns false if it crossed the whole
+     * chunk without touching one. Also used by ParallelMapGenerator to join its regions, which
+     * need not be square.
+     */
+    static boolean carveGate(TETile[][] chunk, int xCoord, int yCoord, int dx, int dy) {
+        int x = xCoord;
+        int y = yCoord;
+        while (x >= 0 && x < chunk.length && y >= 0 && y < chunk[x].length) {
+            boolean touched = chunk[x][y] == Tileset.FLOOR
+                    || chunk[x + dy][y + dx] == Tileset.FLOOR
+                    || chunk[x - dy][y - dx] == Tileset.FLOOR;
+            chunk[x][y] = Tileset.FLOOR;
+            if (chunk[x + dy][y + dx] == Tileset.NOTHING) {
+                chunk[x + dy][y + dx] = Tileset.WALL;
+            }
+            if (chunk[x - dy][y - dx] == Tileset.NOTHING) {
+                chunk[x - dy][y - dx] = Tileset.WALL;
+            }
+            if (touched) {
+                return true;
+            }
+            x += dx;
+            y += dy;
+        }
+        return false;
+    }
+
+    /** Returns a key that tells chunk (cx, cy) apart from every other chunk. */
+    public static long chunkKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /** Mixes the seed with a chunk's coordinates and a salt into a new seed. */
+    private static long mix(long seed, int cx, int cy, int salt) {
+        long h = seed ^ 0x9E3779B97F4A7C15L;
+        h = (h ^ cx) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ cy) * 0x94D049BB133111EBL;
+        h = (h ^ salt) * 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,49 @@
+package byow.WorldGen;
+
+/**
+ * Counts and timing of one call to MapGenerator.generate(), for spotting seeds or map sizes that
+ * are slow to generate.
+ *
+ * @author Nicholas Nguyen
+ */
+public class GenerationMetrics {
+
+    /** Number of times the map was thrown away and generated again from scratch. */
+    private final int restarts;
+    /** Number of hallways built by the repair phase in place of ones that could not be built. */
+    private final int repairedConnections;
+    /** Number of connections given up on because the rooms were already connected another way. */
+    private final int droppedConnections;
+    /** Time spent in generate(), including restarts. */
+    private final long nanos;
+
+    public GenerationMetrics(int restarts, int repairedConnections, int droppedConnections,
+                             long nanos) {
+        this.restarts = restarts;
+        this.repairedConnections = repairedConnections;
+        this.droppedConnections = droppedConnections;
+        this.nanos = nanos;
+    }
+
+    public int getRestarts() {
+        return restarts;
+    }
+
+    public int getRepairedConnections() {
+        return repairedConnections;
+    }
+
+    public int getDroppedConnections() {
+        return droppedConnections;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d restarts, %d repaired, %d dropped, %.2f ms", restarts,
+                repairedConnections, droppedConnections, nanos / 1e6);
+    }
+}
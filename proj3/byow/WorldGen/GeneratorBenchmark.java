@@ -0,0 +1,71 @@
+package byow.WorldGen;
+
+import byow.TileEngine.TETile;
+import byow.TileEngine.Tileset;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares how long each MapGenerator takes across map sizes. For every size and generator, a few
+ * maps are made first so the JIT can warm up, then SEEDS maps are timed, and the average time,
+ * rooms, share of floor tiles and restarts are printed as a table.
+ *
+ * Run with map sizes as arguments, such as "60 200 800", or with none for DEFAULT_SIZES.
+ *
+ * @author Nicholas Nguyen
+ */
+public class GeneratorBenchmark {
+
+    private static final String[] GENERATORS = {"MST", "BSP"};
+    private static final int[] DEFAULT_SIZES = {60, 100, 200, 400, 800};
+    private static final int WARMUP = 3;
+    private static final int SEEDS = 10;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%-5s %6s %10s %8s %7s %9s%n", "Name", "Size", "ms/map", "rooms",
+                "floor", "restarts");
+        for (int size : sizes) {
+            for (String name : GENERATORS) {
+                run(name, size);
+            }
+        }
+    }
+
+    /** Times SEEDS maps of one size from the named generator and prints a row of the table. */
+    private static void run(String name, int size) {
+        Supplier<MapGenerator> factory = MapGenerator.byName(name);
+        for (int seed = 0; seed < WARMUP; seed++) {
+            factory.get().generate(size, size, new Random(-1 - seed));
+        }
+        long nanos = 0;
+        long rooms = 0;
+        long floor = 0;
+        int restarts = 0;
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            MapGenerator generator = factory.get();
+            long start = System.nanoTime();
+            TETile[][] map = generator.generate(size, size, new Random(seed));
+            nanos += System.nanoTime() - start;
+            rooms += generator.getRoomGraph().getRooms().size();
+            restarts += generator.getMetrics().getRestarts();
+            for (TETile[] column : map) {
+                for (TETile tile : column) {
+                    if (tile == Tileset.FLOOR) {
+                        floor++;
+                    }
+                }
+            }
+        }
+        System.out.printf("%-5s %6d %10.2f %8d %6.1f%% %9d%n", name, size,
+                nanos / 1e6 / SEEDS, rooms / SEEDS, 100.0 * floor / SEEDS / size / size,
+                restarts);
+    }
+}
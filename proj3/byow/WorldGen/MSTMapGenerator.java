@@ -3,10 +3,15 @@ package byow.WorldGen;
 import byow.Core.RandomUtils;
 import byow.TileEngine.TETile;
 import byow.TileEngine.Tileset;
+import byow.gridsys.RoomGraph;
+import byow.gridsys.TilePoint;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
 
 
@@ -24,8 +29,18 @@ import java.util.Random;
  *      - 1-wide straight hallways
  *      - 1-wide turning hallways
  *
- * If no turn is made in the final draft, or some room remains unconnected due to collision, the
- * world is re-generated.
+ * If no turn is made in the final draft, or some connection has no hallway due to collision, the
+ * world is re-generated, up to a fixed number of times.
+ *
+ * A generator made with repairHallways set instead repairs the connections that still have no
+ * hallway. A connection between rooms that other hallways already join is dropped, and any other
+ * is replaced by a hallway between the closest rooms of the two groups it would have joined. The
+ * world is then only re-generated if no hallway is made at all, or some room still remains
+ * unconnected. This is faster, but a seed that needed a restart makes a different map than it
+ * does with repair off. The restart count and time spent are kept as GenerationMetrics.
+ *
+ * Every room and every hallway that was built is also recorded in a RoomGraph, which is kept after
+ * generation so that pathfinding can plan routes room by room.
  *
  * @author Nicholas Nguyen
  */
@@ -39,6 +54,16 @@ public class MSTMapGenerator implements MapGenerator {
     /** Chance that a Room is connected to its closest neighbor (if that was not already
      *  included in the MST). */
     private static final double EXTRA_ROOM_CHANCE = 0.7;
+    /** Most times a map is thrown away and generated again before giving up. */
+    private static final int MAX_RESTARTS = 100;
+    /** Number of room pairs the repair phase tries for each connection it repairs. */
+    private static final int REPAIR_CANDIDATES = 4;
+    /** Version of the maps this generator makes. Change it whenever a seed would make a
+     *  different map. */
+    private static final String VERSION = "2";
+
+    /** Whether connections with no hallway are repaired instead of generating the map again. */
+    private final boolean repairHallways;
 
     private List<MSTRoom> roomColl;
     /** The Random object associated with the given seed, used for pseudo-random generation. */
@@ -51,6 +76,16 @@ public class MSTMapGenerator implements MapGenerator {
     private TETile[][] worldMap;
     /** Determines whether a turning hallway has been made in this map. */
     private boolean madeTurn;
+    /** Rooms and hallways of the most recently generated map. */
+    private RoomGraph roomGraph;
+    /** Union-find parent of each room, by room number - 1. Rooms are joined once a hallway
+     *  connects them, so rooms with the same root are connected. */
+    private int[] roomSets;
+    /** Counts of repaired and dropped connections in the current attempt. */
+    private int repairedCount;
+    private int droppedCount;
+    /** Metrics of the most recent call to generate(). */
+    private GenerationMetrics metrics;
 
     /** 2-dimensional array that indicates whether a tile is already filled by something
      * that was randomly generated. Is useful for collision detection. Each space contains a int.
@@ -58,29 +93,69 @@ public class MSTMapGenerator implements MapGenerator {
      * number. */
     private int[][] intMap;
 
+    /** Creates a generator that generates the map again whenever a connection has no hallway. */
+    public MSTMapGenerator() {
+        this(false);
+    }
+
+    /**
+     * @param repairHallways Whether connections with no hallway are repaired instead of
+     *                       generating the map again. Changes the map of some seeds.
+     */
+    public MSTMapGenerator(boolean repairHallways) {
+        this.repairHallways = repairHallways;
+    }
+
     /**
      * Generates a functional map using a provided width, height, and pseudo-random object,
-     * and sets it as its worldMap.
+     * and sets it as its worldMap. Attempts that leave some connection without a hallway, or
+     * with repairHallways some room unconnected even after the repair phase, are thrown away
+     * and made again with the same Random, at most {@link #MAX_RESTARTS} times.
+     *
+     * @throws IllegalStateException If every attempt was thrown away.
      */
     @Override
     public TETile[][] generate(int w, int h, Random r) {
+        long start = System.nanoTime();
         width = w;
         height = h;
         rand = r;
-        worldMap = new TETile[w][h];
-        intMap = new int[w][h];
+        int restarts = 0;
+        while (!tryGenerate()) {
+            restarts++;
+            if (restarts > MAX_RESTARTS) {
+                throw new IllegalStateException("Could not generate a connected " + w + " by "
+                        + h + " map in " + MAX_RESTARTS + " restarts.");
+            }
+        }
+        metrics = new GenerationMetrics(restarts, repairedCount, droppedCount,
+                System.nanoTime() - start);
+        return worldMap;
+    }
+
+    /** Makes one attempt at a map, returning whether a hallway was built and every room ended up
+     *  connected, through the hallway of every connection unless repairHallways is set. */
+    private boolean tryGenerate() {
+        worldMap = new TETile[width][height];
+        intMap = new int[width][height];
         madeTurn = false;
+        roomGraph = new RoomGraph(width, height);
+        repairedCount = 0;
+        droppedCount = 0;
 
         // Sets the backdrop of the worldMap as NOTHING tiles.
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
                 worldMap[x][y] = Tileset.NOTHING;
             }
         }
 
         // Generate and fill rooms.
         generateRooms();
+        roomSets = new int[roomColl.size()];
         for (MSTRoom room : roomColl) {
+            roomSets[room.roomNum - 1] = room.roomNum - 1;
+            roomGraph.addRoom(room.west, room.south, room.east, room.north);
             for (int x = room.west; x <= room.east; x++) {
                 for (int y = room.south; y <= room.north; y++) {
                     if (x == room.west || x == room.east || y == room.north || y == room.south) {
@@ -97,27 +172,31 @@ public class MSTMapGenerator implements MapGenerator {
         generateHallways(4);
         generateHallways(3);
 
-        // Checks that every necessary hallway is created. If not, restart the world generation.
+        // Checks that a hallway was made, then that every necessary hallway was created, or
+        // repairs the connections that could not be built.
         if (!madeTurn) {
-            return generate(w, h, r);
+            return false;
+        }
+        if (repairHallways) {
+            return repairConnections();
         }
         for (MSTRoom room : roomColl) {
             if (!room.connections.isEmpty()) {
-                return generate(w, h, r);
+                return false;
             }
         }
-
-        return worldMap;
+        return true;
     }
 
-
-
     /** Generates a list of MSTRoom objects that fit within the Map. This is accomplished by
      *  repeatedly generating random MSTRoom objects, adding them to the List if they are valid.
      *  This is repeated until the amount of tiles occupied by Rooms exceeds {@link #ROOM_RATIO}.
+     *  Whether a room fits is looked up in a RoomFootprints bitmask rather than in the intMap, so
+     *  each attempt only tests a word or two per column of the room.
      */
     private void generateRooms() {
         roomColl = new ArrayList<>();
+        RoomFootprints footprints = new RoomFootprints(width, height);
         int roomNum = 1;
 
         double filledCount = 0;
@@ -127,7 +206,8 @@ public class MSTMapGenerator implements MapGenerator {
             int newRoomWidth = RandomUtils.discrete(rand, MAX_ROOM_SIZES);
             int newRoomHeight = RandomUtils.discrete(rand, MAX_ROOM_SIZES);
             MSTRoom newRoom = new MSTRoom(west, south, newRoomWidth, newRoomHeight, roomNum);
-            if (newRoom.noOverlap(intMap)) {
+            if (footprints.fits(newRoom)) {
+                footprints.fill(newRoom);
                 roomColl.add(newRoom);
                 filledCount += newRoomHeight * newRoomWidth;
                 updateIntMap(newRoom);
@@ -136,51 +216,54 @@ public class MSTMapGenerator implements MapGenerator {
         }
     }
 
-    /** Naive attempt at creating a Minimum Spanning Tree of all the Rooms using distance.*/
+    /**
+     * Connects the rooms with a Minimum Spanning Tree, using distance between their centers, then
+     * adds some extra connections from rooms with only one.
+     *
+     * The tree is built with Prim's algorithm. Every connected room keeps its closest unconnected
+     * room in a heap, found through a RoomIndex of the unconnected rooms, so rooms are only
+     * compared with rooms near them. When the closest unconnected room of a connected room gets
+     * connected by someone else, its next closest is looked up when its heap entry comes out.
+     * Ties are broken the same way as comparing every pair in order would: the unconnected room
+     * made first wins, then the connected room connected first. The extra connections also look
+     * up the closest room through a RoomIndex, with ties going to the room connected first.
+     */
     private void connectRooms() {
-        List<MSTRoom> unconnected = new ArrayList<>(List.copyOf(roomColl));
+        RoomIndex unconnected = new RoomIndex(roomColl, width, height);
         List<MSTRoom> connected = new ArrayList<>();
-        connected.add(unconnected.remove(0));
-        while (unconnected.size() != 0) {
-            MSTRoom clstCon = connected.get(0);
-            MSTRoom clstUncon = unconnected.get(0);
-            double minDist = Integer.MAX_VALUE;
-            for (MSTRoom unconRoom : unconnected) {
-                for (MSTRoom conRoom : connected) {
-                    double dist = unconRoom.distance(conRoom);
-                    if (dist < minDist) {
-                        clstCon = conRoom;
-                        clstUncon = unconRoom;
-                        minDist = dist;
-                    }
-                }
+        PriorityQueue<Candidate> closest = new PriorityQueue<>();
+        MSTRoom first = roomColl.get(0);
+        unconnected.remove(first);
+        first.joinOrder = 0;
+        connected.add(first);
+        offerClosest(first, unconnected, closest);
+        while (connected.size() < roomColl.size()) {
+            Candidate next = closest.poll();
+            if (next.to.joinOrder >= 0) {
+                offerClosest(next.from, unconnected, closest);
+                continue;
             }
-            clstCon.connections.add(clstUncon);
-            clstUncon.connections.add(clstCon);
-            unconnected.remove(clstUncon);
-            connected.add(clstUncon);
+            next.from.connections.add(next.to);
+            next.to.connections.add(next.from);
+            unconnected.remove(next.to);
+            next.to.joinOrder = connected.size();
+            connected.add(next.to);
+            offerClosest(next.to, unconnected, closest);
+            offerClosest(next.from, unconnected, closest);
         }
         // Extra rooms
+        RoomIndex allRooms = new RoomIndex(roomColl, width, height);
+        Comparator<MSTRoom> byJoinOrder = Comparator.comparingInt(r -> r.joinOrder);
         for (MSTRoom room : connected) {
             if (room.connections.size() > 1) {
                 continue;
             }
             double extraConChance = RandomUtils.uniform(rand);
             if (extraConChance < EXTRA_ROOM_CHANCE) {
-                MSTRoom clstCon = null;
-                double minDist = Integer.MAX_VALUE;
-                for (MSTRoom otherRoom : connected) {
-                    if (otherRoom == room || room.connections.contains(otherRoom)) {
-                        continue;
-                    }
-                    double dist = room.distance(otherRoom);
-                    if (dist < minDist) {
-                        minDist = dist;
-                        clstCon = otherRoom;
-                    }
-                }
+                MSTRoom clstCon = allRooms.nearest(room, room.connections, byJoinOrder);
                 MSTRoom roomNeighbor = room.connections.get(0);
-                if (clstCon != null && minDist < roomNeighbor.distance(clstCon)) {
+                if (clstCon != null
+                        && room.distance(clstCon) < roomNeighbor.distance(clstCon)) {
                     room.connections.add(clstCon);
                     clstCon.connections.add(room);
                     room.roomHappy = true;
@@ -189,6 +272,16 @@ public class MSTMapGenerator implements MapGenerator {
         }
     }
 
+    /** Adds the closest unconnected room to a connected room to the heap, if there is one. */
+    private static void offerClosest(MSTRoom room, RoomIndex unconnected,
+                                     PriorityQueue<Candidate> closest) {
+        MSTRoom to = unconnected.nearest(room, List.of(),
+                Comparator.comparingInt(r -> r.roomNum));
+        if (to != null) {
+            closest.offer(new Candidate(room, to));
+        }
+    }
+
     /** Driver method for creating hallways of a given size. Iterates through each room, creating
      *  a hallway with its connection then removing the connection if a hallway is successfully
      *  constructed. */
@@ -200,6 +293,7 @@ public class MSTMapGenerator implements MapGenerator {
                 boolean res = generateDirectHallway(room, conRoom, size);
                 if (res) {
                     madeTurn = true;
+                    joinRooms(room, conRoom);
                     conRoom.connections.remove(room);
                     removed.add(conRoom);
                 }
@@ -212,6 +306,7 @@ public class MSTMapGenerator implements MapGenerator {
                 boolean res = generateTurningHallway(room, conRoom, size);
                 if (res) {
                     madeTurn = true;
+                    joinRooms(room, conRoom);
                     conRoom.connections.remove(room);
                     removed.add(conRoom);
                 }
@@ -220,6 +315,86 @@ public class MSTMapGenerator implements MapGenerator {
         }
     }
 
+    /**
+     * Goes through the connections that no hallway could be built for. A connection between rooms
+     * that are already connected through other hallways is dropped. Any other is repaired by
+     * trying hallways between the closest pairs of rooms from the two groups it would have joined,
+     * 2-wide before 1-wide and straight before turning, until one is built. Returns whether every
+     * room ended up connected.
+     */
+    private boolean repairConnections() {
+        for (MSTRoom room : roomColl) {
+            for (MSTRoom conRoom : room.connections) {
+                if (room.roomNum > conRoom.roomNum) {
+                    continue;
+                }
+                if (findSet(room) == findSet(conRoom)) {
+                    droppedCount++;
+                } else if (bridge(room, conRoom)) {
+                    repairedCount++;
+                }
+            }
+        }
+        int root = findSet(roomColl.get(0));
+        boolean connected = true;
+        for (MSTRoom room : roomColl) {
+            room.connections.clear();
+            connected = connected && findSet(room) == root;
+        }
+        return connected;
+    }
+
+    /**
+     * Attempts to build a hallway between the groups of connected rooms holding room1 and room2,
+     * in place of the one between room1 and room2 that could not be built. Pairs joining room1 to
+     * the other group, or room2 to the first group, are tried closest first.
+     */
+    private boolean bridge(MSTRoom room1, MSTRoom room2) {
+        int set1 = findSet(room1);
+        int set2 = findSet(room2);
+        List<Candidate> pairs = new ArrayList<>();
+        for (MSTRoom other : roomColl) {
+            int otherSet = findSet(other);
+            if (other != room2 && otherSet == set2) {
+                pairs.add(new Candidate(room1, other));
+            } else if (other != room1 && otherSet == set1) {
+                pairs.add(new Candidate(other, room2));
+            }
+        }
+        Collections.sort(pairs);
+        pairs = pairs.subList(0, Math.min(REPAIR_CANDIDATES, pairs.size()));
+        for (int size = 4; size >= 3; size--) {
+            for (Candidate pair : pairs) {
+                if (generateDirectHallway(pair.from, pair.to, size)) {
+                    joinRooms(pair.from, pair.to);
+                    return true;
+                }
+            }
+            for (Candidate pair : pairs) {
+                if (generateTurningHallway(pair.from, pair.to, size)) {
+                    joinRooms(pair.from, pair.to);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Records that a hallway connects two rooms. */
+    private void joinRooms(MSTRoom room1, MSTRoom room2) {
+        roomSets[findSet(room1)] = findSet(room2);
+    }
+
+    /** Returns the root of the group of connected rooms holding a room. */
+    private int findSet(MSTRoom room) {
+        int set = room.roomNum - 1;
+        while (roomSets[set] != set) {
+            roomSets[set] = roomSets[roomSets[set]];
+            set = roomSets[set];
+        }
+        return set;
+    }
+
     /** Attempts to build a direct hallway of a given size with no turns between two rooms.
      *  Returns true of a room is successfully built, false if the space between the rooms are
      *  insufficient. */
@@ -240,15 +415,32 @@ public class MSTMapGenerator implements MapGenerator {
             int largeWall = smallWall + indSize;
             int start = Math.min(room1Higher[wallDir], room2Higher[wallDir]);
             int stop = Math.max(room1Lower[wallDir], room2Lower[wallDir]);
-            buildHallway(3 * boundDir, smallWall, largeWall, start, stop);
+            TilePoint stopDoor = buildHallway(3 * boundDir, smallWall, largeWall, start, stop);
+            TilePoint startDoor = new TilePoint(stopDoor);
+            if (wallDir == 0) {
+                startDoor.x = start;
+            } else {
+                startDoor.y = start;
+            }
+            if (room1Higher[wallDir] == start) {
+                addPortal(room1, startDoor, room2, stopDoor);
+            } else {
+                addPortal(room2, startDoor, room1, stopDoor);
+            }
             return true;
         }
         return false;
     }
 
+    /** Records a hallway between two rooms in the room graph, given the door in each room. */
+    private void addPortal(MSTRoom room1, TilePoint door1, MSTRoom room2, TilePoint door2) {
+        roomGraph.addPortal(room1.roomNum - 1, door1, room2.roomNum - 1, door2);
+    }
+
     /** Helper method of building a hallway between two points, given a direction and coordinates
-     *  for sizes. */
-    private void buildHallway(int dir, int smallWall, int largeWall, int start, int stop) {
+     *  for sizes. Returns the first floor tile of the hallway at stop, which is where the hallway
+     *  opens into the room whose wall is at stop. */
+    private TilePoint buildHallway(int dir, int smallWall, int largeWall, int start, int stop) {
         // if dir is 0, start -> stop (y coords inc), left -> right (x coords inc) - 1 / 0
         // if dir is 1, start -> stop (x coords dec), left -> right (y coords inc) - 0 / -1
         // if dir is 2, start -> stop (y coords dec), right -> left (x coords inc) - -1 / 0
@@ -269,6 +461,8 @@ public class MSTMapGenerator implements MapGenerator {
             }
             i += dirX[dir] + dirY[dir];
         } while (true);
+        return (dir % 2 == 0) ? new TilePoint(smallWall + 1, stop)
+                : new TilePoint(stop, smallWall + 1);
     }
 
     /**
@@ -312,11 +506,12 @@ public class MSTMapGenerator implements MapGenerator {
             }
             if (valid) { // There exists a valid hallway path
                 //Build Hallway going south
-                buildHallway(2, eastNodeWall - size + 1, eastNodeWall,
+                TilePoint westDoor = buildHallway(2, eastNodeWall - size + 1, eastNodeWall,
                         southNodeWall, westRoom.north);
                 // Build hallway going east
-                buildHallway(3, southNodeWall, southNodeWall + size - 1,
+                TilePoint eastDoor = buildHallway(3, southNodeWall, southNodeWall + size - 1,
                         eastNodeWall, eastRoom.west);
+                addPortal(westRoom, westDoor, eastRoom, eastDoor);
                 // Build corner
                 for (int x = eastNodeWall - 1; x > eastNodeWall - size; x--) {
                     for (int y = southNodeWall + 1; y < southNodeWall + size; y++) {
@@ -345,11 +540,12 @@ public class MSTMapGenerator implements MapGenerator {
             }
             if (valid) { // There exists a valid hallway path
                 //Build Hallway going north
-                buildHallway(0, westNodeWall, westNodeWall + size - 1,
+                TilePoint eastDoor = buildHallway(0, westNodeWall, westNodeWall + size - 1,
                         northNodeWall, eastRoom.south);
                 // Build hallway going west
-                buildHallway(1,  northNodeWall - size + 1,  northNodeWall,
+                TilePoint westDoor = buildHallway(1,  northNodeWall - size + 1,  northNodeWall,
                         westNodeWall, westRoom.east);
+                addPortal(westRoom, westDoor, eastRoom, eastDoor);
                 // Build corner
                 for (int x = westNodeWall + 1; x < westNodeWall + size; x++) {
                     for (int y = northNodeWall - 1; y > northNodeWall - size; y--) {
@@ -386,11 +582,12 @@ public class MSTMapGenerator implements MapGenerator {
             }
             if (valid) { // There exists a valid hallway path
                 //Build Hallway going west
-                buildHallway(1, southNodeWall, southNodeWall + size - 1,
+                TilePoint westDoor = buildHallway(1, southNodeWall, southNodeWall + size - 1,
                         westNodeWall, westRoom.east);
                 // Build hallway going south
-                buildHallway(2, westNodeWall, westNodeWall + size - 1,
+                TilePoint southDoor = buildHallway(2, westNodeWall, westNodeWall + size - 1,
                         southNodeWall, southRoom.north);
+                addPortal(westRoom, westDoor, southRoom, southDoor);
                 // Build corner
                 for (int x = westNodeWall + 1; x < westNodeWall + size; x++) {
                     for (int y = southNodeWall + 1; y < southNodeWall + size; y++) {
@@ -421,11 +618,12 @@ public class MSTMapGenerator implements MapGenerator {
             }
             if (valid) { // There exists a valid hallway path
                 //Build Hallway going east
-                buildHallway(3, southNodeWall - size + 1, southNodeWall,
+                TilePoint southDoor = buildHallway(3, southNodeWall - size + 1, southNodeWall,
                         eastNodeWall, southRoom.west);
                 // Build hallway going north
-                buildHallway(0, eastNodeWall - size + 1, eastNodeWall,
+                TilePoint westDoor = buildHallway(0, eastNodeWall - size + 1, eastNodeWall,
                         southNodeWall, westRoom.south);
+                addPortal(westRoom, westDoor, southRoom, southDoor);
                 // Build corner
                 for (int x = eastNodeWall - 1; x > eastNodeWall - size; x--) {
                     for (int y = southNodeWall - 1; y > southNodeWall - size; y--) {
@@ -467,6 +665,27 @@ public class MSTMapGenerator implements MapGenerator {
         return intMap;
     }
 
+    /**
+     * Retrieves the rooms and hallways of the most recently generated map.
+     */
+    @Override
+    public RoomGraph getRoomGraph() {
+        return roomGraph;
+    }
+
+    /**
+     * Retrieves the metrics of the most recent call to generate().
+     */
+    @Override
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getVersion() {
+        return repairHallways ? VERSION + "-repair" : VERSION;
+    }
+
     /**
      * Returns a TETile[][] map using a intMap associated with the object's worldMap. Used
      * for testing purposes.
@@ -507,6 +726,8 @@ public class MSTMapGenerator implements MapGenerator {
         protected List<MSTRoom> connections;
 
         protected boolean roomHappy = false;
+        /** Position in the order rooms joined the spanning tree, or -1 before joining. */
+        protected int joinOrder = -1;
 
         MSTRoom(int west, int south, int width, int height, int roomNum) {
             this.north = south + height - 1;
@@ -521,18 +742,20 @@ public class MSTMapGenerator implements MapGenerator {
             this.connections = new ArrayList<>();
         }
 
-        public boolean noOverlap(int[][] intMap) {
-            //this function checks to see if the boolMap currently holds any rooms that will
-            //overlap with the current room. It returns false if there is an overlap
+        public int centerX() {
+            return west + width / 2;
+        }
 
-            for (int i = west; i <= east; i++) {
-                for (int j = south; j <= north; j++) {
-                    if (i >= intMap.length || j >= intMap[i].length || intMap[i][j] != 0) {
-                        return false;
-                    }
-                }
-            }
-            return true;
+        public int centerY() {
+            return south + height / 2;
+        }
+
+        /** Returns the squared distance between the centers of two rooms, which orders rooms the
+         *  same way as distance() without rounding. */
+        public long distanceSquared(MSTRoom otherRoom) {
+            long xDiff = centerX() - otherRoom.centerX();
+            long yDiff = centerY() - otherRoom.centerY();
+            return xDiff * xDiff + yDiff * yDiff;
         }
 
         public double distance(MSTRoom otherRoom) {
@@ -545,4 +768,165 @@ public class MSTMapGenerator implements MapGenerator {
             return Math.sqrt(xDiff * xDiff + yDiff * yDiff);
         }
     }
+
+    /** Possible spanning tree edge from a connected room to its closest unconnected room, or pair
+     *  of rooms to repair a connection with. Ordered by distance, then by which to room was made
+     *  first, then by which from room was connected first. */
+    private static class Candidate implements Comparable<Candidate> {
+        private final MSTRoom from;
+        private final MSTRoom to;
+        private final long distSq;
+
+        Candidate(MSTRoom from, MSTRoom to) {
+            this.from = from;
+            this.to = to;
+            this.distSq = from.distanceSquared(to);
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            if (distSq != o.distSq) {
+                return Long.compare(distSq, o.distSq);
+            }
+            if (to.roomNum != o.to.roomNum) {
+                return Integer.compare(to.roomNum, o.to.roomNum);
+            }
+            return Integer.compare(from.joinOrder, o.from.joinOrder);
+        }
+    }
+
+    /**
+     * Tiles covered by rooms, kept as one bitmask of rows per column of the map, for checking
+     * whether a new room fits. Rooms are at most 15 tiles tall, so the rows of a room in one column
+     * span at most two words. A check is constant per room column: a couple of word tests for each
+     * column the room covers, whatever the size of the map. Rooms are at most 15 tiles wide too,
+     * so this beats a 2-D Fenwick tree, whose checks and fills cost O(log width * log height).
+     */
+    private static class RoomFootprints {
+        private final int width;
+        private final int height;
+        private final long[][] columns;
+
+        RoomFootprints(int width, int height) {
+            this.width = width;
+            this.height = height;
+            columns = new long[width][(height + 63) / 64];
+        }
+
+        /** Returns whether the room lies within the map and covers no tile of another room. */
+        boolean fits(MSTRoom room) {
+            if (room.east >= width || room.north >= height) {
+                return false;
+            }
+            for (int x = room.west; x <= room.east; x++) {
+                long[] column = columns[x];
+                for (int word = room.south >>> 6; word <= room.north >>> 6; word++) {
+                    if ((column[word] & rowMask(word, room.south, room.north)) != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void fill(MSTRoom room) {
+            for (int x = room.west; x <= room.east; x++) {
+                long[] column = columns[x];
+                for (int word = room.south >>> 6; word <= room.north >>> 6; word++) {
+                    column[word] |= rowMask(word, room.south, room.north);
+                }
+            }
+        }
+
+        /** Returns the bits of rows south to north, inclusive, that fall in the given word. */
+        private static long rowMask(int word, int south, int north) {
+            long mask = -1L;
+            if (word == south >>> 6) {
+                mask &= -1L << (south & 63);
+            }
+            if (word == north >>> 6) {
+                mask &= -1L >>> (63 - (north & 63));
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * Uniform grid of room centers, in square cells of CELL_SIZE tiles, for finding the closest
+     * room to another room without comparing it with every room. Cells are searched in rings
+     * around the room's cell until no unsearched cell can hold anything as close as the closest
+     * room found so far.
+     */
+    private static class RoomIndex {
+        private static final int CELL_SIZE = 8;
+
+        private final int columns;
+        private final int rows;
+        private final List<List<MSTRoom>> cells;
+
+        RoomIndex(List<MSTRoom> rooms, int width, int height) {
+            columns = width / CELL_SIZE + 1;
+            rows = height / CELL_SIZE + 1;
+            cells = new ArrayList<>(columns * rows);
+            for (int i = 0; i < columns * rows; i++) {
+                cells.add(new ArrayList<>(2));
+            }
+            for (MSTRoom room : rooms) {
+                cellOf(room).add(room);
+            }
+        }
+
+        void remove(MSTRoom room) {
+            cellOf(room).remove(room);
+        }
+
+        /**
+         * Returns the room in the index closest to from, other than from itself and the rooms in
+         * excluded, or null if there is none. Rooms at the same distance are ordered by tieBreak.
+         */
+        MSTRoom nearest(MSTRoom from, List<MSTRoom> excluded, Comparator<MSTRoom> tieBreak) {
+            int cx = from.centerX() / CELL_SIZE;
+            int cy = from.centerY() / CELL_SIZE;
+            MSTRoom best = null;
+            long bestSq = Long.MAX_VALUE;
+            int maxRing = Math.max(columns, rows);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int x = cx - ring; x <= cx + ring; x++) {
+                    if (x < 0 || x >= columns) {
+                        continue;
+                    }
+                    boolean edgeColumn = x == cx - ring || x == cx + ring;
+                    for (int y = cy - ring; y <= cy + ring; y += edgeColumn ? 1 : 2 * ring) {
+                        if (y < 0 || y >= rows) {
+                            continue;
+                        }
+                        for (MSTRoom room : cells.get(x * rows + y)) {
+                            if (room == from || excluded.contains(room)) {
+                                continue;
+                            }
+                            long distSq = from.distanceSquared(room);
+                            if (distSq < bestSq || (distSq == bestSq
+                                    && tieBreak.compare(room, best) < 0)) {
+                                best = room;
+                                bestSq = distSq;
+                            }
+                        }
+                        if (ring == 0) {
+                            break;
+                        }
+                    }
+                }
+                // Rooms beyond this ring are at least ring * CELL_SIZE + 1 tiles away on some axis.
+                long reach = (long) ring * CELL_SIZE + 1;
+                if (best != null && bestSq < reach * reach) {
+                    break;
+                }
+            }
+            return best;
+        }
+
+        private List<MSTRoom> cellOf(MSTRoom room) {
+            return cells.get((room.centerX() / CELL_SIZE) * rows + room.centerY() / CELL_SIZE);
+        }
+    }
 }
@@ -1,8 +1,10 @@
 package byow.WorldGen;
 
 import byow.TileEngine.TETile;
+import byow.gridsys.RoomGraph;
 
 import java.util.Random;
+import java.util.function.Supplier;
 
 /**
  * World generation interface.
@@ -18,8 +20,46 @@ public interface MapGenerator {
     /** Retrieves the intMap */
     int[][] getIntMap();
 
+    /** Retrieves the rooms and hallways of the most recently generated map, for hierarchical
+     *  pathfinding. */
+    RoomGraph getRoomGraph();
+
+    /** Retrieves the restart count and time spent by the most recent call to generate(). */
+    GenerationMetrics getMetrics();
+
+    /** Returns a version that changes whenever the map this generator makes for a given Random
+     *  changes, such as after a change to its algorithm or settings, so that saved copies of old
+     *  maps are not mistaken for new ones. */
+    String getVersion();
+
     /** Returns a TETile[][] map using a intMap associated with the object's worldMap. Used
      *  for testing purposes. */
     TETile[][] getNumMap();
 
+    /**
+     * Returns a factory of the generator with the given name, ignoring case: "MST" for
+     * MSTMapGenerator, or "BSP" for BSPMapGenerator.
+     *
+     * @throws IllegalArgumentException If no generator has that name.
+     */
+    static Supplier<MapGenerator> byName(String name) {
+        return byName(name, false);
+    }
+
+    /**
+     * Returns a factory of the generator with the given name, as byName(name) does.
+     *
+     * @param repairHallways Whether MSTMapGenerator repairs connections with no hallway instead
+     *                       of generating the map again. BSPMapGenerator ignores it.
+     * @throws IllegalArgumentException If no generator has that name.
+     */
+    static Supplier<MapGenerator> byName(String name, boolean repairHallways) {
+        return switch (name.toUpperCase()) {
+            case "MST" -> () -> new MSTMapGenerator(repairHallways);
+            case "BSP" -> BSPMapGenerator::new;
+            default -> throw new IllegalArgumentException("No map generator is named " + name
+                    + ".");
+        };
+    }
+
 }
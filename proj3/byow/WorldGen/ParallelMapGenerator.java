@@ -0,0 +1,308 @@
+package byow.WorldGen;
+
+import byow.TileEngine.TETile;
+import byow.gridsys.RoomGraph;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * MapGenerator that splits the map into a grid of regions of at least regionSize tiles a side and
+ * generates every region at once on a ForkJoinPool, each with its own generator from a factory.
+ *
+ * The map is the same for a given Random no matter how many threads run it. Only one long is
+ * taken from the Random passed to generate(), to seed a SplittableRandom. Before any region
+ * starts, one stream is split off it for each region in order, and then the gates are drawn from
+ * it, so what a region makes only depends on its own stream and never on which regions finish
+ * first.
+ *
+ * Neighboring regions are joined like the chunks of a ChunkedWorld: each pair shares a gate on
+ * their common edge, and both regions carve a corridor through it that runs in until it touches
+ * a floor tile. A region whose corridor touches nothing is generated again from its own stream.
+ * Gates are not recorded as portals, so no RoomGraph is kept and pathfinding searches tiles.
+ *
+ * @author Nicholas Nguyen
+ */
+public class ParallelMapGenerator implements MapGenerator {
+
+    /** Most times one region is generated again because a gate corridor touched nothing. */
+    private static final int MAX_REGION_TRIES = 100;
+    /** Version of the way regions are laid out and joined. Change it whenever a seed would make
+     *  a different map. */
+    private static final String VERSION = "1";
+
+    /** Makes a new generator for each region, since generators keep state while generating. */
+    private final Supplier<MapGenerator> factory;
+    private final int regionSize;
+    private final ForkJoinPool pool;
+
+    private int width;
+    private int height;
+    /** Left edge of each column of regions, with the map width last. */
+    private int[] regionXs;
+    /** Bottom edge of each row of regions, with the map height last. */
+    private int[] regionYs;
+    /** Row of the gate between region (i, j) and region (i + 1, j). */
+    private int[][] eastGates;
+    /** Column of the gate between region (i, j) and region (i, j + 1). */
+    private int[][] northGates;
+    private TETile[][] worldMap;
+    private int[][] intMap;
+    /** intMap of each region, until they are joined into one. */
+    private int[][][][] regionIntMaps;
+    /** Metrics of each region's generator, with gate failures added to the restarts. */
+    private GenerationMetrics[][] regionMetrics;
+    private GenerationMetrics metrics;
+
+    /** Creates a generator that runs on the common ForkJoinPool. */
+    public ParallelMapGenerator(Supplier<MapGenerator> factory, int regionSize) {
+        this(factory, regionSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param factory Makes the generator for each region.
+     * @param regionSize Smallest width and height of a region. Regions along the top and right of
+     *                   the map take up what is left over, so they can be up to twice as big.
+     * @param pool Pool that the regions are generated on.
+     */
+    public ParallelMapGenerator(Supplier<MapGenerator> factory, int regionSize,
+                                ForkJoinPool pool) {
+        if (regionSize < 8) {
+            throw new IllegalArgumentException("Regions must be at least 8 tiles wide.");
+        }
+        this.factory = factory;
+        this.regionSize = regionSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Generates a functional map using a provided width, height, and pseudo-random object,
+     * and sets it as its worldMap.
+     *
+     * @throws IllegalStateException If some region could not be joined to its neighbors.
+     */
+    @Override
+    public TETile[][] generate(int w, int h, Random rand) {
+        long start = System.nanoTime();
+        width = w;
+        height = h;
+        regionXs = edges(w);
+        regionYs = edges(h);
+        int columns = regionXs.length - 1;
+        int rows = regionYs.length - 1;
+
+        SplittableRandom root = new SplittableRandom(rand.nextLong());
+        SplittableRandom[] streams = new SplittableRandom[columns * rows];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = root.split();
+        }
+        eastGates = new int[columns][rows];
+        northGates = new int[columns][rows];
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < rows; j++) {
+                eastGates[i][j] = regionYs[j] + 2
+                        + root.nextInt(regionYs[j + 1] - regionYs[j] - 4);
+                northGates[i][j] = regionXs[i] + 2
+                        + root.nextInt(regionXs[i + 1] - regionXs[i] - 4);
+            }
+        }
+
+        worldMap = new TETile[w][h];
+        regionIntMaps = new int[columns][rows][][];
+        regionMetrics = new GenerationMetrics[columns][rows];
+        pool.invoke(new RegionTask(streams, 0, streams.length));
+        joinIntMaps();
+
+        int restarts = 0;
+        int repaired = 0;
+        int dropped = 0;
+        for (GenerationMetrics[] column : regionMetrics) {
+            for (GenerationMetrics region : column) {
+                restarts += region.getRestarts();
+                repaired += region.getRepairedConnections();
+                dropped += region.getDroppedConnections();
+            }
+        }
+        metrics = new GenerationMetrics(restarts, repaired, dropped, System.nanoTime() - start);
+        regionIntMaps = null;
+        regionMetrics = null;
+        return worldMap;
+    }
+
+    /** Task that generates regions [from, to), numbered column by column. */
+    private class RegionTask extends RecursiveAction {
+        /** ForkJoinTask is Serializable, but tasks are never saved. Pinned so that the UID does
+         *  not depend on the compiler. */
+        private static final long serialVersionUID = 8315448162892152989L;
+
+        private final SplittableRandom[] streams;
+        private final int from;
+        private final int to;
+
+        RegionTask(SplittableRandom[] streams, int from, int to) {
+            this.streams = streams;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RegionTask(streams, from, mid), new RegionTask(streams, mid, to));
+            } else {
+                int rows = regionYs.length - 1;
+                generateRegion(from / rows, from % rows, streams[from]);
+            }
+        }
+    }
+
+    /**
+     * Generates region (i, j) from its stream, carves its gates and copies it into the worldMap.
+     * Only writes to the region's own tiles, so regions can be generated at the same time.
+     */
+    private void generateRegion(int i, int j, SplittableRandom stream) {
+        int x0 = regionXs[i];
+        int y0 = regionYs[j];
+        int regionWidth = regionXs[i + 1] - x0;
+        int regionHeight = regionYs[j + 1] - y0;
+        MapGenerator generator = factory.get();
+        Random random = new Random(stream.nextLong());
+        for (int tries = 0; tries < MAX_REGION_TRIES; tries++) {
+            TETile[][] region = generator.generate(regionWidth, regionHeight, random);
+            if (carveGates(region, i, j)) {
+                for (int x = 0; x < regionWidth; x++) {
+                    System.arraycopy(region[x], 0, worldMap[x0 + x], y0, regionHeight);
+                }
+                regionIntMaps[i][j] = generator.getIntMap();
+                GenerationMetrics regionRun = generator.getMetrics();
+                regionMetrics[i][j] = regionRun == null
+                        ? new GenerationMetrics(tries, 0, 0, 0)
+                        : new GenerationMetrics(regionRun.getRestarts() + tries,
+                        regionRun.getRepairedConnections(), regionRun.getDroppedConnections(),
+                        regionRun.getNanos());
+                return;
+            }
+        }
+        throw new IllegalStateException("Could not join region (" + i + ", " + j
+                + ") to its neighbors in " + MAX_REGION_TRIES + " tries.");
+    }
+
+    /**
+     * Carves the corridors of region (i, j) through the gates it shares with its neighbors. Edges
+     * on the border of the map have no gate. Returns false if some corridor touched nothing.
+     */
+    private boolean carveGates(TETile[][] region, int i, int j) {
+        int x0 = regionXs[i];
+        int y0 = regionYs[j];
+        int lastX = region.length - 1;
+        int lastY = region[0].length - 1;
+        if (i < regionXs.length - 2
+                && !ChunkedWorld.carveGate(region, lastX, eastGates[i][j] - y0, -1, 0)) {
+            return false;
+        }
+        if (i > 0 && !ChunkedWorld.carveGate(region, 0, eastGates[i - 1][j] - y0, 1, 0)) {
+            return false;
+        }
+        if (j < regionYs.length - 2
+                && !ChunkedWorld.carveGate(region, northGates[i][j] - x0, lastY, 0, -1)) {
+            return false;
+        }
+        return j == 0 || ChunkedWorld.carveGate(region, northGates[i][j - 1] - x0, 0, 0, 1);
+    }
+
+    /** Joins the intMaps of the regions into one, numbering rooms in region order. */
+    private void joinIntMaps() {
+        intMap = new int[width][height];
+        int roomOffset = 0;
+        for (int i = 0; i < regionIntMaps.length; i++) {
+            for (int j = 0; j < regionIntMaps[i].length; j++) {
+                int[][] regionMap = regionIntMaps[i][j];
+                if (regionMap == null) {
+                    continue;
+                }
+                int rooms = 0;
+                for (int x = 0; x < regionMap.length; x++) {
+                    for (int y = 0; y < regionMap[x].length; y++) {
+                        int value = regionMap[x][y];
+                        rooms = Math.max(rooms, value);
+                        intMap[regionXs[i] + x][regionYs[j] + y] =
+                                value > 0 ? value + roomOffset : value;
+                    }
+                }
+                roomOffset += rooms;
+            }
+        }
+    }
+
+    /** Returns the edges of the regions along a side of the given length, with the length last. */
+    private int[] edges(int length) {
+        int count = Math.max(1, length / regionSize);
+        int[] edges = new int[count + 1];
+        for (int k = 0; k < count; k++) {
+            edges[k] = k * regionSize;
+        }
+        edges[count] = length;
+        return edges;
+    }
+
+    /**
+     * Retrieves the intMap, with the rooms of each region numbered after those of the regions
+     * before it.
+     */
+    @Override
+    public int[][] getIntMap() {
+        return intMap;
+    }
+
+    /**
+     * Returns null, since the gates between regions are not recorded as portals.
+     */
+    @Override
+    public RoomGraph getRoomGraph() {
+        return null;
+    }
+
+    /**
+     * Retrieves the metrics of the most recent call to generate(), summed over every region. The
+     * time is how long the whole map took, not the sum of the regions' times.
+     */
+    @Override
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a version made of this generator's own version, the region size, and the class and
+     * version of the generator used for each region, since any of them changes the map.
+     */
+    @Override
+    public String getVersion() {
+        MapGenerator regionGenerator = factory.get();
+        return VERSION + "/" + regionSize + "/" + regionGenerator.getClass().getName() + "/"
+                + regionGenerator.getVersion();
+    }
+
+    /**
+     * Returns a TETile[][] map using a intMap associated with the object's worldMap. Used
+     * for testing purposes.
+     */
+    @Override
+    public TETile[][] getNumMap() {
+        TETile[][] resMap = new TETile[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                char thisChar = (char) ('a' + intMap[x][y] - 1);
+                Color bgCol = thisChar == '`' ? new Color(0, 0, 0)
+                        : new Color(59, 123, 134);
+                resMap[x][y] = new TETile(thisChar, new Color(255, 255, 255),
+                        bgCol, "debug");
+            }
+        }
+        return resMap;
+    }
+}
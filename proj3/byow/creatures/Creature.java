@@ -1,5 +1,6 @@
 package byow.creatures;
 
+import byow.gridsys.OccupancyIndex;
 import byow.gridsys.TilePoint;
 import byow.TileEngine.TETile;
 
@@ -12,8 +13,15 @@ import java.io.Serializable;
  * @author Nicholas Nguyen
  */
 public class Creature implements Serializable {
+
+    /** Pinned so that saves written before fields were added can still be read. */
+    private static final long serialVersionUID = -5137102329857821606L;
+
     private TilePoint location;
     private TETile avatar;
+    /** Index told about every move of this creature, if any. Rebuilt by the GameState after
+     *  loading, so it is not saved. */
+    private transient OccupancyIndex occupancy;
 
     public Creature(int initialX, int initialY, TETile tile) {
         location = new TilePoint(initialX, initialY);
@@ -38,15 +46,48 @@ public class Creature implements Serializable {
     }
 
     public void setLoc(int x, int y) {
-        location = new TilePoint(x, y);
+        setLoc(new TilePoint(x, y));
     }
 
     public void setLoc(TilePoint newPoint) {
+        TilePoint oldPoint = location;
         location = newPoint;
+        moved(oldPoint.x, oldPoint.y);
     }
 
     public void move(int dx, int dy) {
+        int oldX = location.x;
+        int oldY = location.y;
         location.changePos(dx, dy);
+        moved(oldX, oldY);
+    }
+
+    /** Moves the creature in a direction, like TilePoint.moveInDir(). */
+    public void moveInDir(int dir, int distance) {
+        int oldX = location.x;
+        int oldY = location.y;
+        location.moveInDir(dir, distance);
+        moved(oldX, oldY);
+    }
+
+    /**
+     * Adds the creature to an index, which is then kept up to date whenever it moves. Removes it
+     * from the index it was in before, if any. Passing null only removes it.
+     */
+    public void setOccupancyIndex(OccupancyIndex index) {
+        if (occupancy != null) {
+            occupancy.remove(this);
+        }
+        occupancy = index;
+        if (index != null) {
+            index.add(this);
+        }
+    }
+
+    private void moved(int oldX, int oldY) {
+        if (occupancy != null) {
+            occupancy.update(this, oldX, oldY);
+        }
     }
 
     public TETile getAvatar() {
@@ -3,6 +3,7 @@ package byow.creatures;
 import byow.Core.GameState;
 import byow.Core.RandomUtils;
 import byow.TileEngine.Tileset;
+import byow.gridsys.FlowField;
 import byow.gridsys.Grid;
 import byow.gridsys.TilePoint;
 
@@ -19,6 +20,17 @@ import java.util.Queue;
  */
 public class Robot extends Creature {
 
+    /** Pinned so that saves written before fields were added can still be read. */
+    private static final long serialVersionUID = 9033943815393732658L;
+
+    /** Distance at which a robot can spot the player. */
+    public static final int SIGHT_RANGE = 10;
+    /** Steps that the shared flow field reaches from the player. A tile SIGHT_RANGE away in a
+     *  straight line is usually up to √2 times as many steps away, so this reaches almost every
+     *  robot that sees the player. Walls can still make the walk longer than this, in which case
+     *  the robot runs its own search. */
+    public static final int CHASE_STEPS = (int) Math.ceil(Math.sqrt(2) * SIGHT_RANGE);
+
     /** Current queue of robot's actions. */
     private final Queue<TilePoint> moveQueue;
 
@@ -32,11 +44,17 @@ public class Robot extends Creature {
         moveQueue = new LinkedList<>();
     }
 
+    /** Forgets the robot's queued moves, for when the map under it is replaced. */
+    public void forgetPath() {
+        moveQueue.clear();
+    }
+
     /**
      * Called once every time the player moves, and controls the robot's movements. The robot first
      * checks to see if the player is in sight. If it sees the player, it then sets its Queue to a
-     * new pathfind towards the player. The robot then checks if it has any movement in its queue,
-     * and if so, it follows the next command.
+     * new path towards the player, following the shared flow field from the GameState and only
+     * falling back to its own pathfind if the field does not reach it. The robot then checks if it
+     * has any movement in its queue, and if so, it follows the next command.
      *
      * If the queue is empty, the robot takes a random valid move, or stays in place.
      *
@@ -47,9 +65,12 @@ public class Robot extends Creature {
         TilePoint playerLoc = game.getPlayer().getLoc();
 
         // Sets up queue if the player is in sight, otherwise, turn neutral.
-        if (getLoc().distance(playerLoc) <= 10 && gameGrid.sight(getLoc(), playerLoc)) {
+        if (getLoc().distance(playerLoc) <= SIGHT_RANGE && gameGrid.sight(getLoc(), playerLoc)) {
             setAvatar(Tileset.ROBOT_ANGRY);
-            List<TilePoint> path = gameGrid.pathfinder(getLoc(), playerLoc);
+            FlowField playerField = game.getPlayerField();
+            List<TilePoint> path = playerField.distanceAt(getLoc()) >= 0
+                    ? playerField.pathToOrigin(getLoc())
+                    : gameGrid.pathfinder(getLoc(), playerLoc);
             if (path.size() > 0) {
                 path.remove(0);
             }
@@ -70,21 +91,19 @@ public class Robot extends Creature {
             for (int i = 0; i <= 3; i++) {
                 TilePoint tile = new TilePoint(getLoc());
                 tile.moveInDir(i, 1);
-                if (gameGrid.getTile(tile).valid()) {
+                if (gameGrid.isWalkable(tile)) {
                     possibleMoves.add(i);
                 }
             }
             int chosenMove = possibleMoves.get(RandomUtils.uniform(
                     game.getRandom(), possibleMoves.size()));
             if (chosenMove != -1) {
-                getLoc().moveInDir(chosenMove, 1);
+                moveInDir(chosenMove, 1);
             }
         } else {
             TilePoint nextMove = moveQueue.poll();
-            for (Robot robot : game.getRobots()) {
-                if (robot.getLoc().equals(nextMove)) {
-                    return false;
-                }
+            if (game.getOccupancy().isOccupied(nextMove, Robot.class)) {
+                return false;
             }
             setLoc(nextMove);
         }
@@ -0,0 +1,250 @@
+package byow.gridsys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A* search engine for a Grid. Every tile is encoded as a single int (x * height + y), and all
+ * per-search bookkeeping (g-scores, parents, open/closed flags, and the indexed heap used as the
+ * fringe) lives in arrays that are allocated once per map size and reused by every search afterwards.
+ *
+ * Instead of clearing the arrays between searches, each search is tagged with a new stamp, and a
+ * tile only counts as opened or closed if its stamp matches the current search.
+ *
+ * Searches can optionally use Jump Point Search, which relies on every walkable tile costing the
+ * same. Rather than pushing every neighbor, the search jumps in straight lines and only pushes
+ * tiles where the path could be forced to turn, so open floors cost a handful of pushes instead of
+ * one per tile. The jump rules are the 4-connected variant: horizontal jumps stop at forced
+ * neighbors, and vertical jumps additionally stop wherever a horizontal jump would find something.
+ *
+ * @author Nicholas Nguyen
+ */
+class AStarPathfinder {
+
+    /** Grid being searched. */
+    private final Grid grid;
+
+    /** Dimensions of the map when the arrays were last allocated. */
+    private int width;
+    private int height;
+
+    /** Cost of the cheapest known path from the start to each tile. */
+    private int[] gScore;
+    /** Tile each tile was reached from on its cheapest known path. */
+    private int[] parent;
+    /** Stamp of the search in which each tile was last opened. */
+    private int[] openStamp;
+    /** Stamp of the search in which each tile was last closed. */
+    private int[] closedStamp;
+    /** Stamp of the current search. */
+    private int stamp;
+
+    /** Fringe of open tiles, ordered by estimated total cost. */
+    private IndexedMinHeap fringe;
+
+    /** Number of tiles expanded by the most recent search. */
+    private int expanded;
+
+    AStarPathfinder(Grid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Runs A* from start to stop.
+     *
+     * @param jump Whether to prune the search using Jump Point Search.
+     * @return A List of tiles from start to stop, inclusive of both, or an empty List if stop
+     * cannot be reached.
+     */
+    List<TilePoint> search(TilePoint start, TilePoint stop, boolean jump) {
+        prepare();
+        expanded = 0;
+        if (!inBounds(start.x, start.y) || !inBounds(stop.x, stop.y)) {
+            return new ArrayList<>();
+        }
+        int startCell = start.x * height + start.y;
+        int stopCell = stop.x * height + stop.y;
+
+        open(startCell, 0, -1, start.stepDistance(stop));
+        while (!fringe.isEmpty()) {
+            int cur = fringe.pop();
+            if (cur == stopCell) {
+                return buildPath(cur);
+            }
+            closedStamp[cur] = stamp;
+            expanded++;
+
+            int curX = cur / height;
+            int curY = cur % height;
+            if (jump) {
+                expandJumpPoints(cur, curX, curY, stop);
+                continue;
+            }
+            int nextG = gScore[cur] + 1;
+            // North, west, south, east, matching the Grid direction constants.
+            relax(cur, curX, curY + 1, nextG, stop);
+            relax(cur, curX - 1, curY, nextG, stop);
+            relax(cur, curX, curY - 1, nextG, stop);
+            relax(cur, curX + 1, curY, nextG, stop);
+        }
+        return new ArrayList<>();
+    }
+
+    /** Pushes the jump point successors of cur. Only directions that are not pruned by the
+     *  direction cur was entered from are explored. */
+    private void expandJumpPoints(int cur, int curX, int curY, TilePoint stop) {
+        int dx = 0;
+        int dy = 0;
+        if (parent[cur] != -1) {
+            dx = Integer.signum(curX - parent[cur] / height);
+            dy = Integer.signum(curY - parent[cur] % height);
+        }
+        if (dx == 0 && dy == 0) {
+            jumpTo(cur, curX, curY, 0, 1, stop);
+            jumpTo(cur, curX, curY, -1, 0, stop);
+            jumpTo(cur, curX, curY, 0, -1, stop);
+            jumpTo(cur, curX, curY, 1, 0, stop);
+        } else if (dx != 0) {
+            jumpTo(cur, curX, curY, dx, 0, stop);
+            jumpTo(cur, curX, curY, 0, 1, stop);
+            jumpTo(cur, curX, curY, 0, -1, stop);
+        } else {
+            jumpTo(cur, curX, curY, 0, dy, stop);
+            jumpTo(cur, curX, curY, 1, 0, stop);
+            jumpTo(cur, curX, curY, -1, 0, stop);
+        }
+    }
+
+    /** Jumps from cur in the direction (dx, dy), and relaxes the jump point found, if any. */
+    private void jumpTo(int cur, int curX, int curY, int dx, int dy, TilePoint stop) {
+        int jp = jump(curX + dx, curY + dy, dx, dy, stop);
+        if (jp == -1 || closedStamp[jp] == stamp) {
+            return;
+        }
+        int jpX = jp / height;
+        int jpY = jp % height;
+        int nextG = gScore[cur] + Math.abs(jpX - curX) + Math.abs(jpY - curY);
+        relax(cur, jpX, jpY, nextG, stop);
+    }
+
+    /**
+     * Walks from (x, y) in the direction (dx, dy) until a jump point is found.
+     *
+     * @return The encoded jump point, or -1 if the walk runs into a wall first.
+     */
+    private int jump(int x, int y, int dx, int dy, TilePoint stop) {
+        while (walkable(x, y)) {
+            if (x == stop.x && y == stop.y) {
+                return x * height + y;
+            }
+            if (dx != 0) {
+                if ((walkable(x, y - 1) && !walkable(x - dx, y - 1))
+                        || (walkable(x, y + 1) && !walkable(x - dx, y + 1))) {
+                    return x * height + y;
+                }
+            } else {
+                if ((walkable(x - 1, y) && !walkable(x - 1, y - dy))
+                        || (walkable(x + 1, y) && !walkable(x + 1, y - dy))) {
+                    return x * height + y;
+                }
+                if (jump(x + 1, y, 1, 0, stop) != -1 || jump(x - 1, y, -1, 0, stop) != -1) {
+                    return x * height + y;
+                }
+            }
+            x += dx;
+            y += dy;
+        }
+        return -1;
+    }
+
+    /** Returns the number of tiles expanded by the most recent search. */
+    int getExpanded() {
+        return expanded;
+    }
+
+    /** Offers the neighbor (x, y) of cur to the fringe if it is walkable and not closed, lowering
+     *  its key if a cheaper path was found. */
+    private void relax(int cur, int x, int y, int nextG, TilePoint stop) {
+        if (!inBounds(x, y)) {
+            return;
+        }
+        int cell = x * height + y;
+        if (closedStamp[cell] == stamp || !grid.isWalkable(x, y)) {
+            return;
+        }
+        int h = Math.abs(x - stop.x) + Math.abs(y - stop.y);
+        if (openStamp[cell] != stamp) {
+            open(cell, nextG, cur, nextG + h);
+        } else if (nextG < gScore[cell]) {
+            gScore[cell] = nextG;
+            parent[cell] = cur;
+            fringe.update(cell, priority(nextG + h, nextG));
+        }
+    }
+
+    /** Adds a tile to the fringe for the first time this search. */
+    private void open(int cell, int g, int par, int f) {
+        openStamp[cell] = stamp;
+        gScore[cell] = g;
+        parent[cell] = par;
+        fringe.insert(cell, priority(f, g));
+    }
+
+    /** Orders tiles by estimated total cost f, breaking ties in favor of the tile furthest from
+     *  the start. */
+    private static long priority(int f, int g) {
+        return ((long) f << 32) | (Integer.MAX_VALUE - g);
+    }
+
+    /** Walks the parent pointers back from the given tile to construct the path. Parents that
+     *  are more than one step away (jump points) are always in a straight line, so the tiles
+     *  in between are filled in one step at a time. */
+    private List<TilePoint> buildPath(int end) {
+        int length = gScore[end] + 1;
+        TilePoint[] points = new TilePoint[length];
+        int x = end / height;
+        int y = end % height;
+        int cell = end;
+        for (int i = length - 1; i >= 0; i--) {
+            points[i] = new TilePoint(x, y);
+            if (cell == x * height + y && parent[cell] != -1) {
+                cell = parent[cell];
+            }
+            x += Integer.signum(cell / height - x);
+            y += Integer.signum(cell % height - y);
+        }
+        return new ArrayList<>(List.of(points));
+    }
+
+    /** Empties the heap and starts a new stamp, reallocating the arrays only if the map size
+     *  changed since the previous search. */
+    private void prepare() {
+        if (gScore == null || grid.getWidth() != width || grid.getHeight() != height) {
+            width = grid.getWidth();
+            height = grid.getHeight();
+            int cells = width * height;
+            gScore = new int[cells];
+            parent = new int[cells];
+            openStamp = new int[cells];
+            closedStamp = new int[cells];
+            fringe = new IndexedMinHeap(cells);
+            stamp = 0;
+        }
+        fringe.clear();
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(openStamp, 0);
+            Arrays.fill(closedStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    private boolean walkable(int x, int y) {
+        return grid.isWalkable(x, y);
+    }
+}
@@ -0,0 +1,195 @@
+package byow.gridsys;
+
+import java.util.Arrays;
+
+/**
+ * Field of view from a single origin tile, computed with shadowcasting. The area around the origin
+ * is split into eight octants, and each octant is scanned one row at a time moving away from the
+ * origin, keeping track of the ranges of slopes that are still lit. Every blocking tile removes its
+ * shadow from those ranges for the rows behind it, so each tile is looked at only if light can
+ * still reach it, and the whole visible set costs one pass instead of one line per tile.
+ *
+ * Visibility matches {@link Grid#sight(TilePoint, TilePoint)}: a tile is visible if the line from
+ * the center of the origin to its center does not pass through the inside of any tile that is not
+ * valid(). Only touching a blocking tile's edge or corner does not block. Slopes are kept as exact
+ * fractions, so lines that pass exactly through a corner are decided the same way every time.
+ *
+ * @author Nicholas Nguyen
+ */
+public class FieldOfView {
+
+    /** Octant transforms. A tile at row d and column c of an octant is at
+     *  (origin.x + d * XX + c * XY, origin.y + d * YX + c * YY). */
+    private static final int[] XX = {1, 0, 0, -1, -1, 0, 0, 1};
+    private static final int[] XY = {0, 1, -1, 0, 0, -1, 1, 0};
+    private static final int[] YX = {0, 1, 1, 0, 0, -1, -1, 0};
+    private static final int[] YY = {1, 0, 0, 1, -1, 0, 0, -1};
+
+    /** Grid the field of view is computed over. */
+    private final Grid grid;
+
+    /** Dimensions of the map when the arrays were last allocated. */
+    private int width;
+    private int height;
+    /** Stamp of the computation in which each tile was last seen. */
+    private int[] seenStamp;
+    /** Stamp of the current computation. */
+    private int stamp;
+
+    /** Lit slope ranges [lo, hi] of the current row, as fractions, and the next row's ranges. */
+    private int[] loNum = new int[8];
+    private int[] loDen = new int[8];
+    private int[] hiNum = new int[8];
+    private int[] hiDen = new int[8];
+    private int[] nextLoNum = new int[8];
+    private int[] nextLoDen = new int[8];
+    private int[] nextHiNum = new int[8];
+    private int[] nextHiDen = new int[8];
+    private int nextCount;
+
+    public FieldOfView(Grid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Recomputes the set of tiles visible from origin.
+     *
+     * @param origin Tile the view is from.
+     * @param radius Tiles further than this (by straight-line distance) are never visible.
+     */
+    public void compute(TilePoint origin, double radius) {
+        prepare();
+        if (!inBounds(origin.x, origin.y)) {
+            return;
+        }
+        seenStamp[origin.x * height + origin.y] = stamp;
+        for (int octant = 0; octant < 8; octant++) {
+            castOctant(origin, radius, octant);
+        }
+    }
+
+    /** Returns whether the tile was visible in the most recent computation. */
+    public boolean isVisible(int x, int y) {
+        return seenStamp != null && inBounds(x, y) && seenStamp[x * height + y] == stamp;
+    }
+
+    /** Scans one octant row by row, starting with every slope from 0 to 1 lit. */
+    private void castOctant(TilePoint origin, double radius, int octant) {
+        int maxDepth = (int) Math.floor(radius);
+        double radiusSquared = radius * radius;
+        int count = 1;
+        loNum[0] = 0;
+        loDen[0] = 1;
+        hiNum[0] = 1;
+        hiDen[0] = 1;
+
+        for (int d = 1; d <= maxDepth && count > 0; d++) {
+            nextCount = 0;
+            for (int i = 0; i < count; i++) {
+                int lN = loNum[i];
+                int lD = loDen[i];
+                int hN = hiNum[i];
+                int hD = hiDen[i];
+
+                // Tiles whose centers lie within [lo, hi] are visible.
+                int cMin = Math.max(0, -Math.floorDiv(-lN * d, lD));
+                int cMax = Math.min(d, Math.floorDiv(hN * d, hD));
+                for (int c = cMin; c <= cMax; c++) {
+                    int x = origin.x + d * XX[octant] + c * XY[octant];
+                    int y = origin.y + d * YX[octant] + c * YY[octant];
+                    if (inBounds(x, y) && d * d + c * c <= radiusSquared) {
+                        seenStamp[x * height + y] = stamp;
+                    }
+                }
+
+                // Blocking tiles cast the open shadow ((2c - 1) / (2d + 1), (2c + 1) / (2d - 1)),
+                // which is cut out of [lo, hi] for the rows behind them.
+                for (int c = Math.max(0, cMin - 1); c <= Math.min(d, cMax + 1); c++) {
+                    int x = origin.x + d * XX[octant] + c * XY[octant];
+                    int y = origin.y + d * YX[octant] + c * YY[octant];
+                    if (!inBounds(x, y) || grid.isWalkable(x, y)) {
+                        continue;
+                    }
+                    int aN = 2 * c - 1;
+                    int aD = 2 * d + 1;
+                    int bN = 2 * c + 1;
+                    int bD = 2 * d - 1;
+                    if (!less(lN, lD, bN, bD) || !less(aN, aD, hN, hD)) {
+                        continue;
+                    }
+                    if (!less(aN, aD, lN, lD)) {
+                        addNext(lN, lD, aN, aD);
+                    }
+                    if (less(lN, lD, bN, bD)) {
+                        lN = bN;
+                        lD = bD;
+                    }
+                    if (less(hN, hD, lN, lD)) {
+                        break;
+                    }
+                }
+                if (!less(hN, hD, lN, lD)) {
+                    addNext(lN, lD, hN, hD);
+                }
+            }
+            swapRows();
+            count = nextCount;
+        }
+    }
+
+    /** Returns whether the fraction aN / aD is less than bN / bD. Denominators are positive. */
+    private static boolean less(int aN, int aD, int bN, int bD) {
+        return (long) aN * bD < (long) bN * aD;
+    }
+
+    /** Adds a lit range to the next row, growing the arrays if needed. */
+    private void addNext(int lN, int lD, int hN, int hD) {
+        if (nextCount == nextLoNum.length) {
+            int size = 2 * nextCount;
+            nextLoNum = Arrays.copyOf(nextLoNum, size);
+            nextLoDen = Arrays.copyOf(nextLoDen, size);
+            nextHiNum = Arrays.copyOf(nextHiNum, size);
+            nextHiDen = Arrays.copyOf(nextHiDen, size);
+        }
+        nextLoNum[nextCount] = lN;
+        nextLoDen[nextCount] = lD;
+        nextHiNum[nextCount] = hN;
+        nextHiDen[nextCount] = hD;
+        nextCount++;
+    }
+
+    /** Makes the next row's ranges the current ones, reusing the old arrays for the next row. */
+    private void swapRows() {
+        int[] tmp = loNum;
+        loNum = nextLoNum;
+        nextLoNum = tmp;
+        tmp = loDen;
+        loDen = nextLoDen;
+        nextLoDen = tmp;
+        tmp = hiNum;
+        hiNum = nextHiNum;
+        nextHiNum = tmp;
+        tmp = hiDen;
+        hiDen = nextHiDen;
+        nextHiDen = tmp;
+    }
+
+    /** Starts a new stamp, reallocating the array only if the map size changed. */
+    private void prepare() {
+        if (seenStamp == null || grid.getWidth() != width || grid.getHeight() != height) {
+            width = grid.getWidth();
+            height = grid.getHeight();
+            seenStamp = new int[width * height];
+            stamp = 0;
+        }
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(seenStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
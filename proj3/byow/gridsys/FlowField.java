@@ -0,0 +1,153 @@
+package byow.gridsys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Breadth-first distance field over a Grid, measured outward from a single origin tile. Once it is
+ * computed, any tile within range can find a shortest path to the origin by repeatedly stepping
+ * to a neighbor with a smaller distance, so many creatures chasing the same target can share one
+ * search instead of each running their own.
+ *
+ * Like AStarPathfinder, tiles are encoded as x * height + y and the arrays are reused between
+ * computations, with a stamp marking which distances belong to the current field.
+ *
+ * @author Nicholas Nguyen
+ */
+public class FlowField {
+
+    /** Grid the field is computed over. */
+    private final Grid grid;
+
+    /** Dimensions of the map when the arrays were last allocated. */
+    private int width;
+    private int height;
+
+    /** Step distance from each tile to the origin. */
+    private int[] dist;
+    /** Stamp of the computation in which each tile was last reached. */
+    private int[] reachedStamp;
+    /** Stamp of the current field. */
+    private int stamp;
+    /** BFS queue, reused between computations. */
+    private int[] queue;
+
+    public FlowField(Grid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Recomputes the field outward from origin, stopping once tiles are more than maxSteps away.
+     *
+     * @param origin Tile that every path in the field leads to.
+     * @param maxSteps Maximum step distance to explore from origin.
+     */
+    public void compute(TilePoint origin, int maxSteps) {
+        prepare();
+        if (!inBounds(origin.x, origin.y)) {
+            return;
+        }
+        int head = 0;
+        int tail = 0;
+        int originCell = origin.x * height + origin.y;
+        reachedStamp[originCell] = stamp;
+        dist[originCell] = 0;
+        queue[tail++] = originCell;
+        while (head < tail) {
+            int cur = queue[head++];
+            int nextDist = dist[cur] + 1;
+            if (nextDist > maxSteps) {
+                continue;
+            }
+            int x = cur / height;
+            int y = cur % height;
+            tail = visit(x, y + 1, nextDist, tail);
+            tail = visit(x - 1, y, nextDist, tail);
+            tail = visit(x, y - 1, nextDist, tail);
+            tail = visit(x + 1, y, nextDist, tail);
+        }
+    }
+
+    /** Returns the step distance from the tile to the origin, or -1 if the tile was not reached
+     *  by the most recent computation. */
+    public int distanceAt(TilePoint tile) {
+        if (dist == null || !inBounds(tile.x, tile.y)) {
+            return -1;
+        }
+        int cell = tile.x * height + tile.y;
+        return reachedStamp[cell] == stamp ? dist[cell] : -1;
+    }
+
+    /**
+     * Follows the field downhill from a tile to the origin.
+     *
+     * @param from Starting tile.
+     * @return A List of tiles from the given tile to the origin, inclusive of the two tiles, or an
+     * empty List if the tile was not reached by the field.
+     */
+    public List<TilePoint> pathToOrigin(TilePoint from) {
+        int d = distanceAt(from);
+        List<TilePoint> path = new ArrayList<>(Math.max(d + 1, 0));
+        if (d < 0) {
+            return path;
+        }
+        int x = from.x;
+        int y = from.y;
+        path.add(new TilePoint(x, y));
+        // Checks north, west, south, east in order, matching the Grid direction constants.
+        int[] dirX = {0, -1, 0, 1};
+        int[] dirY = {1, 0, -1, 0};
+        while (d > 0) {
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + dirX[dir];
+                int ny = y + dirY[dir];
+                if (inBounds(nx, ny) && reachedStamp[nx * height + ny] == stamp
+                        && dist[nx * height + ny] == d - 1) {
+                    x = nx;
+                    y = ny;
+                    break;
+                }
+            }
+            d--;
+            path.add(new TilePoint(x, y));
+        }
+        return path;
+    }
+
+    /** Adds (x, y) to the queue if it is walkable and not yet reached. Returns the new tail. */
+    private int visit(int x, int y, int d, int tail) {
+        if (!inBounds(x, y)) {
+            return tail;
+        }
+        int cell = x * height + y;
+        if (reachedStamp[cell] == stamp || !grid.isWalkable(x, y)) {
+            return tail;
+        }
+        reachedStamp[cell] = stamp;
+        dist[cell] = d;
+        queue[tail] = cell;
+        return tail + 1;
+    }
+
+    /** Starts a new stamp, reallocating the arrays only if the map size changed. */
+    private void prepare() {
+        if (dist == null || grid.getWidth() != width || grid.getHeight() != height) {
+            width = grid.getWidth();
+            height = grid.getHeight();
+            dist = new int[width * height];
+            reachedStamp = new int[width * height];
+            queue = new int[width * height];
+            stamp = 0;
+        }
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(reachedStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
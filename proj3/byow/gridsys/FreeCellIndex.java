@@ -0,0 +1,281 @@
+package byow.gridsys;
+
+import byow.Core.RandomUtils;
+import byow.creatures.Creature;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Walkable tiles with no blocking creature on them, such as the tiles a new robot may spawn on,
+ * so that a random free tile can be picked without trying occupied tiles or listing the map.
+ *
+ * The map is split into square buckets of BUCKET_SIZE tiles a side, like OccupancyIndex, and
+ * each bucket keeps an unordered list of its free tiles along with where each tile is in the
+ * list. A tile that becomes occupied is swapped with the last tile of the list, which then
+ * shrinks by one, and a tile that becomes free is added to the end, so both take constant time.
+ * OccupancyIndex calls occupy() and vacate() as blocking creatures are added, moved and removed.
+ *
+ * To pick a tile away from a point, buckets are sorted into rings by their distance from it:
+ * buckets wholly within the distance are skipped, and the rest are kept, with the tiles of
+ * buckets that straddle the distance checked as they are drawn. A kept bucket is picked with
+ * odds in proportion to its number of free tiles, then a tile by its index in the bucket's list,
+ * so every free tile that fits is equally likely.
+ *
+ * Like the searches in this package, tiles are encoded as x * height + y. The lists are saved,
+ * since their order depends on the order that tiles were freed in, and a loaded game has to pick
+ * the same tiles as one that kept running.
+ *
+ * @author Nicholas Nguyen
+ */
+public class FreeCellIndex implements Serializable {
+
+    /** Pinned so that saves keep loading after fields are added. */
+    private static final long serialVersionUID = 4612362259305865603L;
+
+    /** Width and height in tiles of one bucket. */
+    private static final int BUCKET_SIZE = 8;
+    private static final int BUCKET_TILES = BUCKET_SIZE * BUCKET_SIZE;
+    /** Number of tiles drawn from the kept buckets before the tiles that fit are counted out. */
+    private static final int MAX_TRIES = 64;
+
+    private final int width;
+    private final int height;
+    /** Number of buckets in a column of the map. */
+    private final int bucketsHigh;
+    /** Type of creature that keeps a tile from being free. */
+    private final Class<? extends Creature> blocker;
+    /** Walkable tiles of each bucket, with one bit per tile at its place in the bucket. */
+    private final long[] walkable;
+    /** Free tiles of each bucket by their place in the bucket, with bucket b's list starting at
+     *  b * BUCKET_TILES. */
+    private final byte[] free;
+    /** Length of each bucket's list. */
+    private final int[] freeCounts;
+    /** Number of free tiles. */
+    private int size;
+
+    /** Index of each tile in its bucket's list, or -1 if it is not free, by bucket and place in
+     *  the bucket. Rebuilt from free after loading. */
+    private transient byte[] position;
+    /** Number of blocking creatures on each tile. Rebuilt by countBlockers() after loading. */
+    private transient int[] blockers;
+    /** Kept buckets of the last pick, and the running total of their free tiles. */
+    private transient int[] kept;
+    private transient int[] keptEnds;
+    private transient int keptCount;
+
+    /**
+     * Creates an index with every walkable tile of a Grid free. Tell it about the creatures
+     * already on the map with occupy().
+     *
+     * @param blocker Type of creature that keeps a tile from being free.
+     */
+    public FreeCellIndex(Grid grid, Class<? extends Creature> blocker) {
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.bucketsHigh = (height + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        this.blocker = blocker;
+        int buckets = bucketsHigh * ((width + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        this.walkable = new long[buckets];
+        this.free = new byte[buckets * BUCKET_TILES];
+        this.freeCounts = new int[buckets];
+        this.position = new byte[buckets * BUCKET_TILES];
+        this.blockers = new int[width * height];
+        Arrays.fill(position, (byte) -1);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (grid.isWalkable(x, y)) {
+                    walkable[bucketOf(x, y)] |= 1L << placeOf(x, y);
+                    add(bucketOf(x, y), placeOf(x, y));
+                }
+            }
+        }
+    }
+
+    /** Rebuilds position from the saved lists. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        position = new byte[free.length];
+        Arrays.fill(position, (byte) -1);
+        for (int bucket = 0; bucket < freeCounts.length; bucket++) {
+            for (int i = 0; i < freeCounts[bucket]; i++) {
+                position[bucket * BUCKET_TILES + free[bucket * BUCKET_TILES + i]] = (byte) i;
+            }
+        }
+        blockers = new int[width * height];
+    }
+
+    /** Counts the blocking creatures of a loaded game on each tile, without changing the lists,
+     *  which were saved with them already taken out. */
+    public void countBlockers(List<? extends Creature> creatures) {
+        Arrays.fill(blockers, 0);
+        for (Creature creature : creatures) {
+            if (blocks(creature)) {
+                blockers[creature.getX() * height + creature.getY()]++;
+            }
+        }
+    }
+
+    /** Returns whether a creature keeps the tile it is on from being free. */
+    public boolean blocks(Creature creature) {
+        return blocker.isInstance(creature);
+    }
+
+    /** Notes that a blocking creature is on (x, y), taking the tile out of its bucket's list. */
+    public void occupy(int xCoord, int yCoord) {
+        blockers[xCoord * height + yCoord]++;
+        int bucket = bucketOf(xCoord, yCoord);
+        int index = position[bucket * BUCKET_TILES + placeOf(xCoord, yCoord)];
+        if (index < 0) {
+            return;
+        }
+        int last = freeCounts[bucket] - 1;
+        byte moved = free[bucket * BUCKET_TILES + last];
+        free[bucket * BUCKET_TILES + index] = moved;
+        position[bucket * BUCKET_TILES + moved] = (byte) index;
+        position[bucket * BUCKET_TILES + placeOf(xCoord, yCoord)] = -1;
+        freeCounts[bucket] = last;
+        size--;
+    }
+
+    /** Notes that a blocking creature left (x, y), adding the tile back to its bucket's list if
+     *  it is walkable and no other blocking creature is on it. */
+    public void vacate(int xCoord, int yCoord) {
+        int cell = xCoord * height + yCoord;
+        blockers[cell]--;
+        int bucket = bucketOf(xCoord, yCoord);
+        int place = placeOf(xCoord, yCoord);
+        if (blockers[cell] == 0 && (walkable[bucket] & (1L << place)) != 0) {
+            add(bucket, place);
+        }
+    }
+
+    /** Returns the number of free tiles. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a random free tile that is at least minDist away from avoid, by straight-line
+     * distance, or -1 if there is none.
+     *
+     * @param avoid Tile to keep away from, or null for none.
+     */
+    public int randomCell(Random random, TilePoint avoid, int minDist) {
+        int total = keepBuckets(avoid, minDist);
+        if (total == 0) {
+            return -1;
+        }
+        for (int i = 0; i < MAX_TRIES; i++) {
+            int cell = cellByRank(RandomUtils.uniform(random, total));
+            if (fits(cell, avoid, minDist)) {
+                return cell;
+            }
+        }
+
+        // Only buckets that straddle minDist can have tiles that do not fit, so this is only
+        // reached when most of the kept tiles are in them.
+        int fitting = 0;
+        for (int rank = 0; rank < total; rank++) {
+            if (fits(cellByRank(rank), avoid, minDist)) {
+                fitting++;
+            }
+        }
+        if (fitting == 0) {
+            return -1;
+        }
+        int pick = RandomUtils.uniform(random, fitting);
+        for (int rank = 0; rank < total; rank++) {
+            int cell = cellByRank(rank);
+            if (fits(cell, avoid, minDist)) {
+                if (pick == 0) {
+                    return cell;
+                }
+                pick--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills kept with the buckets that have a free tile and are not wholly within minDist of
+     * avoid, and keptEnds with the running total of their free tiles. Returns the total.
+     * Looks at every bucket, but not at their tiles.
+     */
+    private int keepBuckets(TilePoint avoid, int minDist) {
+        if (kept == null) {
+            kept = new int[freeCounts.length];
+            keptEnds = new int[freeCounts.length];
+        }
+        long minDistSq = (long) minDist * minDist;
+        keptCount = 0;
+        int total = 0;
+        for (int bucket = 0; bucket < freeCounts.length; bucket++) {
+            if (freeCounts[bucket] == 0) {
+                continue;
+            }
+            if (avoid != null) {
+                int west = bucket / bucketsHigh * BUCKET_SIZE;
+                int south = bucket % bucketsHigh * BUCKET_SIZE;
+                long farX = Math.max(Math.abs(avoid.x - west),
+                        Math.abs(avoid.x - (west + BUCKET_SIZE - 1)));
+                long farY = Math.max(Math.abs(avoid.y - south),
+                        Math.abs(avoid.y - (south + BUCKET_SIZE - 1)));
+                if (farX * farX + farY * farY < minDistSq) {
+                    continue;
+                }
+            }
+            total += freeCounts[bucket];
+            kept[keptCount] = bucket;
+            keptEnds[keptCount] = total;
+            keptCount++;
+        }
+        return total;
+    }
+
+    /** Returns the free tile with the given rank among the tiles of the kept buckets. */
+    private int cellByRank(int rank) {
+        int low = 0;
+        int high = keptCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keptEnds[mid] > rank) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        int bucket = kept[low];
+        int index = rank - (low > 0 ? keptEnds[low - 1] : 0);
+        int place = free[bucket * BUCKET_TILES + index];
+        int x = bucket / bucketsHigh * BUCKET_SIZE + place / BUCKET_SIZE;
+        int y = bucket % bucketsHigh * BUCKET_SIZE + place % BUCKET_SIZE;
+        return x * height + y;
+    }
+
+    private boolean fits(int cell, TilePoint avoid, int minDist) {
+        return avoid == null || avoid.distance(cell / height, cell % height) >= minDist;
+    }
+
+    /** Adds a tile to the end of its bucket's list. */
+    private void add(int bucket, int place) {
+        free[bucket * BUCKET_TILES + freeCounts[bucket]] = (byte) place;
+        position[bucket * BUCKET_TILES + place] = (byte) freeCounts[bucket];
+        freeCounts[bucket]++;
+        size++;
+    }
+
+    private int bucketOf(int xCoord, int yCoord) {
+        return (xCoord / BUCKET_SIZE) * bucketsHigh + yCoord / BUCKET_SIZE;
+    }
+
+    /** Returns the place of (x, y) in its bucket. */
+    private static int placeOf(int xCoord, int yCoord) {
+        return (xCoord % BUCKET_SIZE) * BUCKET_SIZE + yCoord % BUCKET_SIZE;
+    }
+}
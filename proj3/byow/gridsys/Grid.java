@@ -3,28 +3,72 @@ package byow.gridsys;
 import byow.TileEngine.TETile;
 import byow.creatures.Creature;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.function.UnaryOperator;
 
 /**
  * Grid object as a more abstract way of accessing TETile[][] maps while utilizing the Point class.
+ * Tiles are stored in a PaletteGrid, at one byte per tile, which may be kept on the heap or in a
+ * memory-mapped file.
  *
  * @author Nicholas Nguyen.
  */
 public class Grid implements Serializable {
+    /** Pinned so that saves written before fields were added can still be read. */
+    private static final long serialVersionUID = -4899606204159108095L;
+
     /** Static fields for cardinal directions. */
     public static final int NORTH = 0;
     public static final int WEST = 1;
     public static final int SOUTH = 2;
     public static final int EAST = 3;
 
-    /** Underlying 2-D array of the Grid. */
+    /** Default number of paths kept by each Grid's path cache. */
+    public static final int DEFAULT_PATH_CACHE_CAPACITY = 256;
+
+    /** Underlying tiles of the Grid. */
+    private PaletteGrid tiles;
+    /** Underlying 2-D array of the Grid, as saved before tiles replaced it. Only set while loading
+     *  an old save, and moved into tiles as soon as it is read. */
     private TETile[][] map;
+    /** Rooms and hallways of the map, if they are known. Used for hierarchical pathfinding. */
+    private RoomGraph roomGraph;
+    /** Reusable A* search state. Rebuilt lazily, so it is not saved with the Grid. */
+    private transient AStarPathfinder aStar;
+    /** Room-level planner on top of aStar. Rebuilt lazily, so it is not saved with the Grid. */
+    private transient HierarchicalPathfinder hierarchical;
+    /** Number of tiles expanded by the most recent call to pathfinder(). */
+    private transient int lastExpanded;
+    /** Recently found paths. Rebuilt lazily, so it is not saved with the Grid. */
+    private transient PathCache pathCache;
+    /** Incremented whenever a tile, the whole map, or the room graph changes through this Grid,
+     *  which invalidates cached paths. */
+    private transient int version;
+    /** One bit per tile, set if the tile is valid(), with the tile at (x, y) at bit
+     *  x * height + y. Built from tiles when first needed and kept in sync by setTile(), so it
+     *  is not saved. */
+    private transient long[] walkable;
 
     /** Initializer, adds map. */
     public Grid(TETile[][] m) {
-        this.map = m;
+        this.tiles = new PaletteGrid(m);
+    }
+
+    /** Creates a Grid over existing tiles, such as a MappedPaletteGrid. */
+    public Grid(PaletteGrid tiles) {
+        this.tiles = tiles;
+    }
+
+    /** Moves the tiles of a save written before tiles was added into a PaletteGrid. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (map != null) {
+            tiles = new PaletteGrid(map);
+            map = null;
+        }
     }
 
     /**
@@ -35,63 +79,147 @@ public class Grid implements Serializable {
      * @return A List of nodes that compose a path from start to stop, inclusive of the two nodes.
      */
     public List<TilePoint> pathfinder(TilePoint start, TilePoint stop) {
-        PriorityQueue<TilePointNode> fringe = new PriorityQueue<>();
-        fringe.offer(new TilePointNode(start, null, start.stepDistance(stop), 0));
-        Set<TilePoint> visited = new HashSet<>();
-
-        TilePointNode pathPtr = null;
-        while (!fringe.isEmpty()) {
-            TilePointNode curNode = fringe.poll();
-            TilePoint curPoint = curNode.point;
-            if (curPoint.equals(stop)) {
-                pathPtr = curNode;
-                break;
-            }
-            fringe.removeIf(ptNode -> ptNode.point.equals(curPoint));
-
-            TilePoint[] nwse = {
-                new TilePoint(curPoint.x, curPoint.y + 1),
-                new TilePoint(curPoint.x - 1, curPoint.y),
-                new TilePoint(curPoint.x, curPoint.y - 1),
-                new TilePoint(curPoint.x + 1, curPoint.y),
-            };
-            for (TilePoint tilePoint : nwse) {
-                if (getTile(tilePoint).valid() && !visited.contains(tilePoint)) {
-                    int startDist = curNode.startDist + 1;
-                    fringe.offer(new TilePointNode(tilePoint, curNode,
-                            startDist + tilePoint.stepDistance(stop), startDist));
-                }
-            }
-            visited.add(curPoint);
+        return pathfinder(start, stop, PathMode.ASTAR);
+    }
+
+    /**
+     * Pathfinding algorithm on a grid, using the given search strategy. Paths are cached per
+     * start, stop, and mode until the map changes.
+     *
+     * @param start Starting node to path-find from.
+     * @param stop Ending node to path-find to.
+     * @param mode Search strategy to use.
+     * @return A List of nodes that compose a path from start to stop, inclusive of the two nodes.
+     */
+    public List<TilePoint> pathfinder(TilePoint start, TilePoint stop, PathMode mode) {
+        if (aStar == null) {
+            aStar = new AStarPathfinder(this);
+            hierarchical = new HierarchicalPathfinder(aStar);
+        }
+        if (pathCache == null) {
+            pathCache = new PathCache(DEFAULT_PATH_CACHE_CAPACITY);
+        }
+        PathCache.Key key = new PathCache.Key(start, stop, mode);
+        List<TilePoint> cached = pathCache.get(key, version);
+        if (cached != null) {
+            lastExpanded = 0;
+            return cached;
         }
 
-        LinkedList<TilePoint> path = new LinkedList<>();
-        while (pathPtr != null) {
-            path.addFirst(pathPtr.point);
-            pathPtr = pathPtr.parent;
+        List<TilePoint> path;
+        if (mode == PathMode.HIERARCHICAL && roomGraph != null) {
+            path = hierarchical.search(roomGraph, start, stop);
+            lastExpanded = hierarchical.getExpanded();
+        } else {
+            path = aStar.search(start, stop, mode != PathMode.ASTAR);
+            lastExpanded = aStar.getExpanded();
         }
-        return new ArrayList<>(path);
+        pathCache.put(key, path, version);
+        return path;
     }
 
-    /** Helper class for pathfind(). */
-    private record TilePointNode(TilePoint point, TilePointNode parent, int weight,
-                                 int startDist) implements Comparable<TilePointNode> {
+    /** Returns the number of tiles expanded by the most recent call to pathfinder(). */
+    public int getExpandedCount() {
+        return lastExpanded;
+    }
 
-        @Override
-        public int compareTo(TilePointNode o) {
-            return weight - o.weight;
-        }
+    /** Returns the number of pathfinder() calls answered from the path cache. */
+    public long getPathCacheHits() {
+        return pathCache == null ? 0 : pathCache.getHits();
+    }
+
+    /** Returns the number of pathfinder() calls that missed the path cache and had to search. */
+    public long getPathCacheMisses() {
+        return pathCache == null ? 0 : pathCache.getMisses();
+    }
+
+    /** Sets the maximum number of paths kept in the path cache, and empties it. A capacity of 0
+     *  disables caching. */
+    public void setPathCacheCapacity(int capacity) {
+        pathCache = new PathCache(capacity);
     }
 
     /**
      * Line of sight algorithm. Determines if an unobstructed line can be drawn from an origin Tile
      * to the center of the target Tile.
      *
+     * The line is walked one column at a time. Where it crosses from one column to the next, its
+     * height is the fraction dy * (2i + 1) / (2 * |dx|), and every tile in the column between the
+     * heights at its two edges is on the line. Both heights are rounded like referenceSight() does,
+     * so a line through the exact corner of two tiles touches neither of them. The check stops at
+     * the first blocking tile, and nothing is allocated.
+     *
      * @param target The target Tile
      * @return Returns true if an unobstructed line can be drawn to the center of target, and false
      * if no such line can be made.
      */
     public boolean sight(TilePoint origin, TilePoint target) {
+        if (origin.equals(target)) {
+            return true;
+        }
+        int dx = target.x - origin.x;
+        int dy = target.y - origin.y;
+        if (dx == 0) { // Vertical line case
+            int dir = Integer.signum(dy);
+            for (int y = origin.y + dir; y != target.y; y += dir) {
+                if (blocksSight(origin.x, y)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int dir = Integer.signum(dx);
+        int steps = Math.abs(dx);
+        // Rounded heights of the line at the previous column edge, relative to origin.y.
+        int prevLow = 0;
+        int prevHigh = 0;
+        for (int i = 0; i < steps; i++) {
+            int crossing = dy * (2 * i + 1);
+            int newLow = Math.floorDiv(crossing + steps, 2 * steps);
+            int newHigh = -Math.floorDiv(steps - crossing, 2 * steps);
+            if (!columnClear(origin, target, origin.x + i * dir,
+                    origin.y + Math.min(prevLow, newLow), origin.y + Math.max(prevHigh, newHigh))) {
+                return false;
+            }
+            prevLow = newLow;
+            prevHigh = newHigh;
+        }
+        return columnClear(origin, target, target.x,
+                origin.y + Math.min(prevLow, dy), origin.y + Math.max(prevHigh, dy));
+    }
+
+    /** Returns whether no tile from low to high in column x blocks sight, not counting the two
+     *  ends of the line. */
+    private boolean columnClear(TilePoint origin, TilePoint target, int x, int low, int high) {
+        for (int y = low; y <= high; y++) {
+            if ((x == origin.x && y == origin.y) || (x == target.x && y == target.y)) {
+                continue;
+            }
+            if (blocksSight(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns whether the tile blocks sight. Tiles outside the map never do. */
+    private boolean blocksSight(int x, int y) {
+        if (x < 0 || x > getWidth() - 1 || y < 0 || y > getHeight() - 1) {
+            return false;
+        }
+        return !isWalkable(x, y);
+    }
+
+    /**
+     * Original line of sight algorithm, which collects every tile on the line into a set before
+     * checking them. Gives the same answers as sight(), and is kept as the reference for testing it.
+     *
+     * @param target The target Tile
+     * @return Returns true if an unobstructed line can be drawn to the center of target, and false
+     * if no such line can be made.
+     */
+    public boolean referenceSight(TilePoint origin, TilePoint target) {
         if (origin.equals(target)) {
             return true;
         }
@@ -128,7 +256,7 @@ public class Grid implements Serializable {
 
         // Iterate through all inline tiles
         for (TilePoint tile : inline) {
-            if (tile.x < 0 || tile.x > map.length - 1 || tile.y < 0 || tile.y > map[0].length - 1) {
+            if (tile.x < 0 || tile.x > getWidth() - 1 || tile.y < 0 || tile.y > getHeight() - 1) {
                 continue;
             }
             if (!getTile(tile).valid()) {
@@ -158,15 +286,63 @@ public class Grid implements Serializable {
     }
 
     public TETile getTile(TilePoint p) {
-        return map[p.x][p.y];
+        return tiles.getTile(p.x, p.y);
     }
 
     public TETile getTile(int xCoord, int yCoord) {
-        return map[xCoord][yCoord];
+        return tiles.getTile(xCoord, yCoord);
     }
 
     public void setTile(TilePoint tile, TETile tileType) {
-        map[tile.x][tile.y] = tileType;
+        setTile(tile.x, tile.y, tileType);
+    }
+
+    public void setTile(int xCoord, int yCoord, TETile tileType) {
+        tiles.setTile(xCoord, yCoord, tileType);
+        if (walkable != null) {
+            setWalkable(xCoord * getHeight() + yCoord, tileType);
+        }
+        version++;
+    }
+
+    /**
+     * Returns whether (x, y) is inside the map and its tile is valid(), from a bitmask instead of
+     * calling valid(). Pathfinding and line of sight both use this, since a tile that cannot be
+     * walked on also blocks sight.
+     */
+    public boolean isWalkable(int xCoord, int yCoord) {
+        int height = getHeight();
+        if (xCoord < 0 || xCoord >= getWidth() || yCoord < 0 || yCoord >= height) {
+            return false;
+        }
+        if (walkable == null) {
+            buildWalkable();
+        }
+        int cell = xCoord * height + yCoord;
+        return (walkable[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean isWalkable(TilePoint p) {
+        return isWalkable(p.x, p.y);
+    }
+
+    /** Fills the walkability bitmask from the tiles. */
+    private void buildWalkable() {
+        int height = getHeight();
+        walkable = new long[(getWidth() * height + 63) >>> 6];
+        for (int x = 0; x < getWidth(); x++) {
+            for (int y = 0; y < height; y++) {
+                setWalkable(x * height + y, tiles.getTile(x, y));
+            }
+        }
+    }
+
+    private void setWalkable(int cell, TETile tile) {
+        if (tile != null && tile.valid()) {
+            walkable[cell >>> 6] |= 1L << cell;
+        } else {
+            walkable[cell >>> 6] &= ~(1L << cell);
+        }
     }
 
     public void setTile(Creature creature) {
@@ -177,11 +353,50 @@ public class Grid implements Serializable {
         return map[point.x][point.y];
     }
 
+    /** Returns the number of tiles in a row of the map. */
+    public int getWidth() {
+        return tiles.getWidth();
+    }
+
+    /** Returns the number of tiles in a column of the map. */
+    public int getHeight() {
+        return tiles.getHeight();
+    }
+
+    /** Returns the current map version, for planners that keep state between searches. */
+    int getVersion() {
+        return version;
+    }
+
+    public RoomGraph getRoomGraph() {
+        return roomGraph;
+    }
+
+    public void setRoomGraph(RoomGraph graph) {
+        roomGraph = graph;
+        version++;
+    }
+
+    /** Returns a copy of the map as a 2-D array. Changing the array does not change the Grid. */
     public TETile[][] getMap() {
-        return map;
+        return tiles.toArray();
+    }
+
+    /** Stores a mask of one bit per tile alongside the tiles, if they have room for one, and
+     *  returns whether it was stored. See PaletteGrid.storeMask(). */
+    public boolean storeMask(BitSet mask) {
+        return tiles.storeMask(mask);
+    }
+
+    /** Returns the mask stored alongside the tiles, or null if there is none. */
+    public BitSet loadMask() {
+        return tiles.loadMask();
     }
 
+    /** Replaces every tile with a copy of newMap, kept on the heap. */
     public void setMap(TETile[][] newMap) {
-        map = newMap;
+        tiles = new PaletteGrid(newMap);
+        walkable = null;
+        version++;
     }
 }
@@ -0,0 +1,156 @@
+package byow.gridsys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Two-level (HPA*-style) pathfinder over a Grid with a RoomGraph. The route is first planned over
+ * the doors of the room graph: doors in the same room are linked by their step distance across the
+ * room, and the two doors of a portal are linked by the length of their hallway. The route is then
+ * refined by running the tile-level search only between consecutive doors, so each search stays
+ * inside one room or one hallway.
+ *
+ * The door graph assumes every room is an open rectangle and every hallway is unobstructed, so the
+ * plan is near-optimal rather than optimal. Every refined segment is a real search on the tiles,
+ * so the returned path is always walkable. If either end is outside a room, or a segment cannot be
+ * refined, the whole path falls back to a single tile-level search.
+ *
+ * @author Nicholas Nguyen
+ */
+class HierarchicalPathfinder {
+
+    /** Tile-level search used for refinement and fallback. */
+    private final AStarPathfinder tileSearch;
+
+    /** Number of tiles expanded by the most recent search, over every refined segment. */
+    private int expanded;
+
+    HierarchicalPathfinder(AStarPathfinder tileSearch) {
+        this.tileSearch = tileSearch;
+    }
+
+    /**
+     * Plans a path from start to stop over the rooms of the graph, then refines it.
+     *
+     * @return A List of tiles from start to stop, inclusive of both, or an empty List if stop
+     * cannot be reached.
+     */
+    List<TilePoint> search(RoomGraph graph, TilePoint start, TilePoint stop) {
+        int startRoom = graph.roomAt(start.x, start.y);
+        int stopRoom = graph.roomAt(stop.x, stop.y);
+        if (startRoom == -1 || stopRoom == -1 || startRoom == stopRoom) {
+            return fallback(start, stop);
+        }
+        List<TilePoint> waypoints = planDoors(graph, start, startRoom, stop, stopRoom);
+        if (waypoints == null) {
+            return fallback(start, stop);
+        }
+
+        List<TilePoint> path = new ArrayList<>();
+        path.add(start);
+        expanded = 0;
+        TilePoint from = start;
+        for (TilePoint to : waypoints) {
+            if (from.equals(to)) {
+                continue;
+            }
+            List<TilePoint> segment = tileSearch.search(from, to, true);
+            expanded += tileSearch.getExpanded();
+            if (segment.isEmpty()) {
+                return fallback(start, stop);
+            }
+            path.addAll(segment.subList(1, segment.size()));
+            from = to;
+        }
+        return path;
+    }
+
+    /** Returns the number of tiles expanded by the most recent search. */
+    int getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Runs A* over the doors of the graph, from start to stop.
+     *
+     * @return The doors to pass through in order, followed by stop, or null if the graph does
+     * not connect the two rooms.
+     */
+    private List<TilePoint> planDoors(RoomGraph graph, TilePoint start, int startRoom,
+                                      TilePoint stop, int stopRoom) {
+        int doors = graph.doorCount();
+        int stopNode = doors;
+        int[] dist = new int[doors + 1];
+        int[] prev = new int[doors + 1];
+        boolean[] closed = new boolean[doors + 1];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Arrays.fill(prev, -1);
+
+        // Each entry is {estimated total cost, door}.
+        PriorityQueue<int[]> fringe = new PriorityQueue<>((a, b) -> a[0] - b[0]);
+        for (int d : graph.doorsOf(startRoom)) {
+            dist[d] = start.stepDistance(graph.door(d));
+            fringe.offer(new int[]{dist[d] + graph.door(d).stepDistance(stop), d});
+        }
+        while (!fringe.isEmpty()) {
+            int cur = fringe.poll()[1];
+            if (closed[cur]) {
+                continue;
+            }
+            if (cur == stopNode) {
+                break;
+            }
+            closed[cur] = true;
+            TilePoint curDoor = graph.door(cur);
+            int room = graph.doorRoom(cur);
+
+            // Cross the hallway to the partner door, or cross the room to another door.
+            int partner = cur ^ 1;
+            relax(fringe, dist, prev, closed, cur, partner,
+                    dist[cur] + curDoor.stepDistance(graph.door(partner)), graph.door(partner),
+                    stop);
+            for (int d : graph.doorsOf(room)) {
+                if (d != cur) {
+                    relax(fringe, dist, prev, closed, cur, d,
+                            dist[cur] + curDoor.stepDistance(graph.door(d)), graph.door(d), stop);
+                }
+            }
+            if (room == stopRoom) {
+                relax(fringe, dist, prev, closed, cur, stopNode,
+                        dist[cur] + curDoor.stepDistance(stop), stop, stop);
+            }
+        }
+        if (dist[stopNode] == Integer.MAX_VALUE) {
+            return null;
+        }
+
+        ArrayList<TilePoint> waypoints = new ArrayList<>();
+        waypoints.add(stop);
+        for (int d = prev[stopNode]; d != -1; d = prev[d]) {
+            waypoints.add(graph.door(d));
+        }
+        Collections.reverse(waypoints);
+        return waypoints;
+    }
+
+    /** Lowers the distance of a node in the door graph if a cheaper route to it was found. */
+    private static void relax(PriorityQueue<int[]> fringe, int[] dist, int[] prev,
+                              boolean[] closed, int from, int to, int newDist, TilePoint toTile,
+                              TilePoint stop) {
+        if (!closed[to] && newDist < dist[to]) {
+            dist[to] = newDist;
+            prev[to] = from;
+            fringe.offer(new int[]{newDist + toTile.stepDistance(stop), to});
+        }
+    }
+
+    /** Searches the whole path at the tile level. */
+    private List<TilePoint> fallback(TilePoint start, TilePoint stop) {
+        List<TilePoint> path = tileSearch.search(start, stop, true);
+        expanded = tileSearch.getExpanded();
+        return path;
+    }
+}
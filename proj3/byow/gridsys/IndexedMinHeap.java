@@ -0,0 +1,151 @@
+package byow.gridsys;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int items (encoded tiles) with long priorities, which also tracks where each
+ * item sits in the heap. This lets an item's priority be changed in place (decrease-key) instead
+ * of pushing a duplicate, and lets any item be removed in O(log n).
+ *
+ * Searches that need a two-part priority pack it into one long, with the more significant part in
+ * the upper 32 bits.
+ *
+ * @author Nicholas Nguyen
+ */
+class IndexedMinHeap {
+
+    /** Items in heap order. */
+    private final int[] heap;
+    /** Position of each item within the heap, or -1 if the item is not in the heap. */
+    private final int[] pos;
+    /** Priority of each item in the heap. */
+    private final long[] keys;
+    /** Number of items currently in the heap. */
+    private int size;
+
+    /** Creates an empty heap for items in the range [0, capacity). */
+    IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new long[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int item) {
+        return pos[item] != -1;
+    }
+
+    /** Returns the item with the lowest priority without removing it. */
+    int peek() {
+        return heap[0];
+    }
+
+    /** Returns the lowest priority in the heap. */
+    long peekKey() {
+        return keys[heap[0]];
+    }
+
+    /** Returns the priority of an item in the heap. */
+    long keyOf(int item) {
+        return keys[item];
+    }
+
+    /** Adds an item that is not yet in the heap. */
+    void insert(int item, long key) {
+        keys[item] = key;
+        heap[size] = item;
+        pos[item] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /** Changes the priority of an item already in the heap, in either direction. */
+    void update(int item, long key) {
+        long old = keys[item];
+        keys[item] = key;
+        if (key < old) {
+            siftUp(pos[item]);
+        } else {
+            siftDown(pos[item]);
+        }
+    }
+
+    /** Removes and returns the item with the lowest priority. */
+    int pop() {
+        int top = heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    /** Removes an item if it is in the heap. */
+    void remove(int item) {
+        if (pos[item] != -1) {
+            removeAt(pos[item]);
+        }
+    }
+
+    /** Removes every item from the heap. */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int i) {
+        int item = heap[i];
+        size--;
+        pos[item] = -1;
+        if (i == size) {
+            return;
+        }
+        int last = heap[size];
+        heap[i] = last;
+        pos[last] = i;
+        if (keys[last] < keys[item]) {
+            siftUp(i);
+        } else {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int i) {
+        int item = heap[i];
+        while (i > 0) {
+            int p = (i - 1) / 2;
+            if (keys[item] >= keys[heap[p]]) {
+                break;
+            }
+            heap[i] = heap[p];
+            pos[heap[i]] = i;
+            i = p;
+        }
+        heap[i] = item;
+        pos[item] = i;
+    }
+
+    private void siftDown(int i) {
+        int item = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[heap[child]] >= keys[item]) {
+                break;
+            }
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = item;
+        pos[item] = i;
+    }
+}
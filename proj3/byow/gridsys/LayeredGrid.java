@@ -0,0 +1,306 @@
+package byow.gridsys;
+
+import byow.TileEngine.TETile;
+import byow.TileEngine.Tileset;
+import byow.creatures.Creature;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The map as it is shown to the player, made of three layers that are combined whenever a tile
+ * is asked for, instead of being copied into a map of their own:
+ *
+ *      - Terrain: the Grid of the generated world, which is shared and never written to.
+ *      - Overlay: the few tiles drawn on top of the terrain, such as creatures or a highlighted
+ *        path, stored sparsely by tile.
+ *      - Fog: which tiles the player can see right now and which they have explored. Tiles out
+ *        of sight are drawn as seen or hidden versions of themselves.
+ *
+ * Like the searches in this package, tiles are encoded as x * height + y.
+ *
+ * @author Nicholas Nguyen
+ */
+public class LayeredGrid {
+
+    /** Maps with at least this many tiles are turned into an array and have their fog of war
+     *  updated in parallel, if parallel mode is turned on. Smaller maps are faster to do on one
+     *  thread. */
+    public static final int PARALLEL_THRESHOLD = 256 * 256;
+    /** Number of columns handled by one parallel task. */
+    private static final int STRIP_WIDTH = 16;
+
+    /** Bottom layer. */
+    private final Grid terrain;
+    private final int width;
+    private final int height;
+
+    /** Tiles drawn over the terrain, by encoded tile. */
+    private final HashMap<Integer, TETile> overlay;
+    /** Marks the tiles that have an entry in overlay, so that most lookups skip the map. */
+    private final BitSet overlaid;
+
+    /** Tiles the player has seen. Shared with whoever saves them. */
+    private final BitSet explored;
+    /** Tiles the player can see as of the last updateView(). */
+    private final FieldOfView view;
+    /** Whether the fog layer is shown. */
+    private boolean fogOfWar;
+    /** Whether large maps are turned into an array and have their view updated in parallel. */
+    private boolean parallel;
+
+    /**
+     * @param terrain Grid of the generated world.
+     * @param explored Tiles the player has seen, which updateView() adds to.
+     */
+    public LayeredGrid(Grid terrain, BitSet explored) {
+        this.terrain = terrain;
+        this.width = terrain.getWidth();
+        this.height = terrain.getHeight();
+        this.overlay = new HashMap<>();
+        this.overlaid = new BitSet(width * height);
+        this.explored = explored;
+        this.view = new FieldOfView(terrain);
+    }
+
+    /** Returns the tile shown at (x, y), with every layer applied. */
+    public TETile getTile(int xCoord, int yCoord) {
+        TETile tile = getUnfoggedTile(xCoord, yCoord);
+        if (!fogOfWar || tile.character() == ' ' || view.isVisible(xCoord, yCoord)) {
+            return tile;
+        }
+        return hiddenTile(tile.character(), explored.get(xCoord * height + yCoord));
+    }
+
+    public TETile getTile(TilePoint p) {
+        return getTile(p.x, p.y);
+    }
+
+    /** Returns the tile at (x, y) from the terrain and overlay, ignoring fog. */
+    public TETile getUnfoggedTile(int xCoord, int yCoord) {
+        int cell = xCoord * height + yCoord;
+        if (overlaid.get(cell)) {
+            return overlay.get(cell);
+        }
+        return terrain.getTile(xCoord, yCoord);
+    }
+
+    /** Draws a tile over the terrain. Drawing a tile that looks like the terrain's own tile
+     *  removes the overlay, even if the terrain's tile is a copy loaded from a file. */
+    public void setTile(TilePoint tile, TETile tileType) {
+        int cell = tile.x * height + tile.y;
+        if (tileType.looksLike(terrain.getTile(tile))) {
+            overlay.remove(cell);
+            overlaid.clear(cell);
+        } else {
+            overlay.put(cell, tileType);
+            overlaid.set(cell);
+        }
+    }
+
+    /** Draws a creature over the terrain at its location. */
+    public void setTile(Creature creature) {
+        setTile(creature.getLoc(), creature.getAvatar());
+    }
+
+    /** Removes everything drawn over the terrain. */
+    public void clearOverlay() {
+        for (int cell : overlay.keySet()) {
+            overlaid.clear(cell);
+        }
+        overlay.clear();
+    }
+
+    /**
+     * Recomputes which tiles can be seen from origin, and marks them as explored. On large maps
+     * in parallel mode, the tiles around origin are sorted into explored or not in column strips
+     * on the common ForkJoinPool, after the field of view itself is computed on this thread.
+     *
+     * @param radius Tiles further than this (by straight-line distance) cannot be seen.
+     */
+    public void updateView(TilePoint origin, int radius) {
+        view.compute(origin, radius);
+        int fromX = Math.max(0, origin.x - radius);
+        int toX = Math.min(width - 1, origin.x + radius) + 1;
+        int fromY = Math.max(0, origin.y - radius);
+        int toY = Math.min(height - 1, origin.y + radius) + 1;
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        if (parallel && width * height >= PARALLEL_THRESHOLD) {
+            ViewTask all = new ViewTask(fromX, toX, fromY, toY);
+            ForkJoinPool.commonPool().invoke(all);
+            all.markExplored();
+            return;
+        }
+        for (int x = fromX; x < toX; x++) {
+            for (int y = fromY; y < toY; y++) {
+                if (seesTile(x, y)) {
+                    explored.set(x * height + y);
+                }
+            }
+        }
+    }
+
+    /** Returns whether (x, y) is visible and is something other than empty space. */
+    private boolean seesTile(int xCoord, int yCoord) {
+        return view.isVisible(xCoord, yCoord)
+                && getUnfoggedTile(xCoord, yCoord).character() != ' ';
+    }
+
+    /** Shows or hides the fog layer. */
+    public void setFogOfWar(boolean fog) {
+        fogOfWar = fog;
+    }
+
+    /** Turns parallel mode on or off for maps of at least PARALLEL_THRESHOLD tiles. */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /** Returns what is drawn in place of a tile the player cannot see. */
+    private static TETile hiddenTile(char tileChar, boolean wasExplored) {
+        if (wasExplored) {
+            return switch (tileChar) {
+                case '#' -> Tileset.SEEN_WALL;
+                case '❀' -> Tileset.SEEN_KEY;
+                default -> Tileset.SEEN_FLOOR;
+            };
+        } else if (tileChar == '❀') {
+            return Tileset.GHOST_KEY;
+        } else {
+            return Tileset.NOTHING;
+        }
+    }
+
+    /**
+     * Returns every shown tile as a new 2-D array. On large maps in parallel mode, the columns are
+     * split into strips that run on the common ForkJoinPool. Each strip only reads the layers and
+     * writes to its own columns, so the result is the same as on one thread.
+     */
+    public TETile[][] toArray() {
+        TETile[][] map = new TETile[width][height];
+        StripTask all = new StripTask(map, 0, width);
+        if (parallel && width * height >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(all);
+        } else {
+            all.fill();
+        }
+        return map;
+    }
+
+    /** Task that fills columns [fromX, toX) of an array with the shown tiles. */
+    private class StripTask extends RecursiveAction {
+        /** Never saved, but ForkJoinTask is Serializable. */
+        private static final long serialVersionUID = 546247293610562604L;
+
+        private final TETile[][] map;
+        private final int fromX;
+        private final int toX;
+
+        StripTask(TETile[][] map, int fromX, int toX) {
+            this.map = map;
+            this.fromX = fromX;
+            this.toX = toX;
+        }
+
+        @Override
+        protected void compute() {
+            if (toX - fromX > STRIP_WIDTH) {
+                int mid = (fromX + toX) >>> 1;
+                invokeAll(new StripTask(map, fromX, mid), new StripTask(map, mid, toX));
+            } else {
+                fill();
+            }
+        }
+
+        void fill() {
+            for (int x = fromX; x < toX; x++) {
+                for (int y = 0; y < height; y++) {
+                    map[x][y] = getTile(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Task that finds the tiles of columns [fromX, toX) and rows [fromY, toY) that updateView()
+     * marks as explored. BitSet is not safe to write from several threads, even at different
+     * bits, so each column gets its own words of a shared array, which no other strip writes to,
+     * and markExplored() copies the bits into explored on one thread once every strip is done.
+     */
+    private class ViewTask extends RecursiveAction {
+        /** Never saved, but ForkJoinTask is Serializable. */
+        private static final long serialVersionUID = -1678328680385633287L;
+
+        private final int fromX;
+        private final int toX;
+        private final int fromY;
+        private final int toY;
+        /** Number of words given to each column. */
+        private final int columnWords;
+        /** Bit y - fromY of column x - boxX is set if (x, y) is to be marked, shared by all of the
+         *  strips of one updateView(). */
+        private final long[] seen;
+        /** First column of the whole box. */
+        private final int boxX;
+
+        ViewTask(int fromX, int toX, int fromY, int toY) {
+            this(fromX, toX, fromY, toY, fromX,
+                    new long[(toX - fromX) * ((toY - fromY + 63) >>> 6)]);
+        }
+
+        private ViewTask(int fromX, int toX, int fromY, int toY, int boxX, long[] seen) {
+            this.fromX = fromX;
+            this.toX = toX;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.columnWords = (toY - fromY + 63) >>> 6;
+            this.boxX = boxX;
+            this.seen = seen;
+        }
+
+        @Override
+        protected void compute() {
+            if (toX - fromX > STRIP_WIDTH) {
+                int mid = (fromX + toX) >>> 1;
+                invokeAll(new ViewTask(fromX, mid, fromY, toY, boxX, seen),
+                        new ViewTask(mid, toX, fromY, toY, boxX, seen));
+                return;
+            }
+            for (int x = fromX; x < toX; x++) {
+                int start = (x - boxX) * columnWords;
+                for (int y = fromY; y < toY; y++) {
+                    if (seesTile(x, y)) {
+                        seen[start + ((y - fromY) >>> 6)] |= 1L << (y - fromY);
+                    }
+                }
+            }
+        }
+
+        /** Marks the tiles found by every strip as explored. */
+        void markExplored() {
+            for (int x = fromX; x < toX; x++) {
+                int start = (x - boxX) * columnWords;
+                for (int word = 0; word < columnWords; word++) {
+                    long bits = seen[start + word];
+                    while (bits != 0) {
+                        int y = fromY + (word << 6) + Long.numberOfTrailingZeros(bits);
+                        explored.set(x * height + y);
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
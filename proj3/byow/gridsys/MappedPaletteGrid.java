@@ -0,0 +1,156 @@
+package byow.gridsys;
+
+import byow.TileEngine.TETile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * PaletteGrid whose palette indices live in a memory-mapped file instead of on the Java heap. The
+ * operating system pages the file in as tiles are read, so opening a saved world only reads the
+ * few pages that are used, and the map never counts against the heap.
+ *
+ * The file holds a 16 byte header (a magic number, a format version, the width and the height),
+ * then one byte per tile, then a mask of one bit per tile stored as longs, usually the tiles the
+ * player has explored. Only the palette, which is a handful of tiles, is saved with the object
+ * itself, along with the path of the file. Saving the object writes dirty pages back to the file
+ * first, so the file and the save always match.
+ *
+ * Since a MappedByteBuffer is indexed by int, a map can have at most about two billion tiles.
+ *
+ * @author Nicholas Nguyen
+ */
+public class MappedPaletteGrid extends PaletteGrid {
+
+    /** Pinned so that saves keep loading after fields are added. */
+    private static final long serialVersionUID = -2444553251248358552L;
+
+    /** "BYOW" in ASCII. */
+    private static final int MAGIC = 0x42594F57;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    /** Absolute path of the mapped file. */
+    private final String path;
+    /** Mapping of the whole file. Mapped again after loading, so it is not saved. */
+    private transient MappedByteBuffer buffer;
+
+    /**
+     * Creates a file holding the given map, replacing the file if it exists, and maps it.
+     *
+     * @throws IOException If the file cannot be written.
+     * @throws IllegalArgumentException If the map has too many tiles to be mapped.
+     */
+    public MappedPaletteGrid(File file, TETile[][] map) throws IOException {
+        super(map.length, map.length > 0 ? map[0].length : 0, null);
+        this.path = file.getAbsolutePath();
+        int width = getWidth();
+        int height = getHeight();
+        if (fileSize(width, height) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A " + width + " by " + height
+                    + " map is too large to be mapped.");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.setLength(fileSize(width, height));
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                setTile(x, y, map[x][y]);
+            }
+        }
+    }
+
+    @Override
+    int cell(int tile) {
+        return buffer.get(HEADER_BYTES + tile) & 0xFF;
+    }
+
+    @Override
+    void setCell(int tile, int paletteIndex) {
+        buffer.put(HEADER_BYTES + tile, (byte) paletteIndex);
+    }
+
+    /** Stores the mask in the file. Bits past the last tile are dropped. */
+    @Override
+    public boolean storeMask(BitSet mask) {
+        long[] words = mask.get(0, getWidth() * getHeight()).toLongArray();
+        LongBuffer stored = maskBuffer();
+        stored.put(words);
+        while (stored.hasRemaining()) {
+            stored.put(0L);
+        }
+        return true;
+    }
+
+    @Override
+    public BitSet loadMask() {
+        return BitSet.valueOf(maskBuffer());
+    }
+
+    /** Writes every changed tile and mask bit back to the file. */
+    public void flush() {
+        buffer.force();
+    }
+
+    public File getFile() {
+        return new File(path);
+    }
+
+    /** Returns a view of the mask section of the file. */
+    private LongBuffer maskBuffer() {
+        int offset = maskOffset(getWidth(), getHeight());
+        return buffer.slice(offset, buffer.capacity() - offset).asLongBuffer();
+    }
+
+    /** Flushes the file before saving, so that it matches the save. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        flush();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Maps the file again after loading.
+     *
+     * @throws InvalidObjectException If the file is missing or does not hold this map.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        File file = new File(path);
+        long size = fileSize(getWidth(), getHeight());
+        if (!file.isFile() || file.length() != size) {
+            throw new InvalidObjectException("World file " + path
+                    + " is missing or the wrong size.");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != getWidth() || buffer.getInt(12) != getHeight()) {
+            throw new InvalidObjectException("World file " + path + " does not match the save.");
+        }
+    }
+
+    /** Returns where the mask starts in a file for a width by height map, aligned to a long. */
+    private static int maskOffset(int width, int height) {
+        return (int) ((HEADER_BYTES + (long) width * height + 7) & ~7L);
+    }
+
+    private static long fileSize(int width, int height) {
+        long tiles = (long) width * height;
+        return ((HEADER_BYTES + tiles + 7) & ~7L) + 8 * ((tiles + 63) / 64);
+    }
+}
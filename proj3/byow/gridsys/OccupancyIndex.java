@@ -0,0 +1,194 @@
+package byow.gridsys;
+
+import byow.creatures.Creature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Spatial hash of the creatures on a map, used to find who is on a tile, or near one, without
+ * looking through every creature. The map is split into square buckets of BUCKET_SIZE tiles a
+ * side, and each bucket lists the creatures standing in it, so finding the creatures on a tile only
+ * looks through one bucket, and finding the creatures within a radius only looks through the
+ * buckets that the radius overlaps. Buckets with no creatures are not stored.
+ *
+ * Creatures added with Creature.setOccupancyIndex() tell the index whenever they move. Several
+ * creatures can share a tile, such as a robot walking over a key. The index passes the moves of
+ * blocking creatures on to its FreeCellIndex, if it has one.
+ *
+ * @author Nicholas Nguyen
+ */
+public class OccupancyIndex {
+
+    /** Width and height in tiles of one bucket. */
+    private static final int BUCKET_SIZE = 8;
+
+    private final int width;
+    private final int height;
+    /** Number of buckets in a column of the map. */
+    private final int bucketsHigh;
+    /** Creatures in each bucket, by bucket number. */
+    private final HashMap<Integer, ArrayList<Creature>> buckets;
+    /** Number of creatures in the index. */
+    private int size;
+    /** Free tiles kept up to date with the creatures in the index, or null. */
+    private FreeCellIndex freeCells;
+
+    /** Creates an empty index for a map of the given size. */
+    public OccupancyIndex(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.bucketsHigh = (height + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        this.buckets = new HashMap<>();
+    }
+
+    /**
+     * Adds a creature at its current location. Creatures should be added through
+     * Creature.setOccupancyIndex(), so that the index hears about their moves.
+     *
+     * @throws IllegalArgumentException If the creature is not on the map.
+     */
+    public void add(Creature creature) {
+        buckets.computeIfAbsent(bucketOf(creature.getX(), creature.getY()),
+                b -> new ArrayList<>()).add(creature);
+        size++;
+        if (freeCells != null && freeCells.blocks(creature)) {
+            freeCells.occupy(creature.getX(), creature.getY());
+        }
+    }
+
+    /** Removes a creature from its current location. Does nothing if it is not in the index. */
+    public void remove(Creature creature) {
+        if (removeFrom(bucketOf(creature.getX(), creature.getY()), creature)) {
+            size--;
+            if (freeCells != null && freeCells.blocks(creature)) {
+                freeCells.vacate(creature.getX(), creature.getY());
+            }
+        }
+    }
+
+    /**
+     * Moves a creature from (oldX, oldY) to its current location. Called by the creature after it
+     * moves.
+     */
+    public void update(Creature creature, int oldX, int oldY) {
+        int oldBucket = bucketOf(oldX, oldY);
+        int newBucket = bucketOf(creature.getX(), creature.getY());
+        if (oldBucket != newBucket && removeFrom(oldBucket, creature)) {
+            buckets.computeIfAbsent(newBucket, b -> new ArrayList<>()).add(creature);
+        }
+        if (freeCells != null && freeCells.blocks(creature)) {
+            freeCells.occupy(creature.getX(), creature.getY());
+            freeCells.vacate(oldX, oldY);
+        }
+    }
+
+    /**
+     * Makes the index pass the moves of blocking creatures on to freeCells from now on. The
+     * creatures already in the index must already be counted in freeCells.
+     */
+    public void setFreeCells(FreeCellIndex freeCells) {
+        this.freeCells = freeCells;
+    }
+
+    /** Returns the creatures of the given type on (x, y). */
+    public <T extends Creature> List<T> creaturesAt(int xCoord, int yCoord, Class<T> type) {
+        List<T> found = new ArrayList<>();
+        if (inBounds(xCoord, yCoord)) {
+            for (Creature creature : bucket(bucketOf(xCoord, yCoord))) {
+                if (creature.getX() == xCoord && creature.getY() == yCoord
+                        && type.isInstance(creature)) {
+                    found.add(type.cast(creature));
+                }
+            }
+        }
+        return found;
+    }
+
+    public <T extends Creature> List<T> creaturesAt(TilePoint tile, Class<T> type) {
+        return creaturesAt(tile.x, tile.y, type);
+    }
+
+    /** Returns whether a creature of the given type is on (x, y). */
+    public boolean isOccupied(int xCoord, int yCoord, Class<? extends Creature> type) {
+        if (!inBounds(xCoord, yCoord)) {
+            return false;
+        }
+        for (Creature creature : bucket(bucketOf(xCoord, yCoord))) {
+            if (creature.getX() == xCoord && creature.getY() == yCoord
+                    && type.isInstance(creature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isOccupied(TilePoint tile, Class<? extends Creature> type) {
+        return isOccupied(tile.x, tile.y, type);
+    }
+
+    /**
+     * Returns the creatures of the given type within radius of center, by straight-line distance.
+     * Only the buckets that the radius overlaps are looked through.
+     */
+    public <T extends Creature> List<T> creaturesWithin(TilePoint center, double radius,
+                                                        Class<T> type) {
+        List<T> found = new ArrayList<>();
+        int reach = (int) Math.floor(radius);
+        int minX = Math.max(0, center.x - reach) / BUCKET_SIZE;
+        int maxX = Math.min(width - 1, center.x + reach) / BUCKET_SIZE;
+        int minY = Math.max(0, center.y - reach) / BUCKET_SIZE;
+        int maxY = Math.min(height - 1, center.y + reach) / BUCKET_SIZE;
+        for (int bx = minX; bx <= maxX; bx++) {
+            for (int by = minY; by <= maxY; by++) {
+                for (Creature creature : bucket(bx * bucketsHigh + by)) {
+                    if (type.isInstance(creature)
+                            && creature.getLoc().distance(center) <= radius) {
+                        found.add(type.cast(creature));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Returns the number of creatures in the index. */
+    public int size() {
+        return size;
+    }
+
+    /** Removes a creature from a bucket, returning whether it was there. */
+    private boolean removeFrom(int bucketNum, Creature creature) {
+        ArrayList<Creature> bucket = buckets.get(bucketNum);
+        if (bucket == null || !bucket.remove(creature)) {
+            return false;
+        }
+        if (bucket.isEmpty()) {
+            buckets.remove(bucketNum);
+        }
+        return true;
+    }
+
+    private List<Creature> bucket(int bucketNum) {
+        ArrayList<Creature> bucket = buckets.get(bucketNum);
+        return bucket == null ? List.of() : bucket;
+    }
+
+    /**
+     * Returns the number of the bucket holding (x, y).
+     *
+     * @throws IllegalArgumentException If (x, y) is not on the map.
+     */
+    private int bucketOf(int xCoord, int yCoord) {
+        if (!inBounds(xCoord, yCoord)) {
+            throw new IllegalArgumentException("(" + xCoord + ", " + yCoord
+                    + ") is not on the map.");
+        }
+        return (xCoord / BUCKET_SIZE) * bucketsHigh + yCoord / BUCKET_SIZE;
+    }
+
+    private boolean inBounds(int xCoord, int yCoord) {
+        return xCoord >= 0 && xCoord < width && yCoord >= 0 && yCoord < height;
+    }
+}
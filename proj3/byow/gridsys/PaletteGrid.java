@@ -0,0 +1,150 @@
+package byow.gridsys;
+
+import byow.TileEngine.TETile;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Compact 2-D map of TETiles that stores one byte per tile. Maps are built from a handful of
+ * shared TETile objects (mostly the Tileset constants), so each distinct tile is stored once in a
+ * palette, and every cell only holds the palette index of its tile, rather than a 4 or 8 byte
+ * reference. This only shrinks the tiles themselves: the searches that run over a whole Grid,
+ * such as FieldOfView, FlowField and AStarPathfinder, still keep arrays of ints per tile, which
+ * take several times more memory than the tiles on a large map.
+ *
+ * Tiles are told apart by identity, like the == comparisons used on Tileset constants elsewhere.
+ * Index 0 of the palette is always null, so a new PaletteGrid is filled with null tiles, just like
+ * a new TETile[][]. Like the searches in this package, tiles are encoded as x * height + y.
+ *
+ * @author Nicholas Nguyen
+ */
+public class PaletteGrid implements Serializable {
+
+    /** Pinned so that saves written before fields were added can still be read. */
+    private static final long serialVersionUID = 8843863618783259328L;
+
+    /** Maximum number of distinct tiles, including null, that a PaletteGrid can hold. */
+    public static final int MAX_TILES = 256;
+
+    private final int width;
+    private final int height;
+    /** Palette index of every tile, as an unsigned byte. Null if a subclass stores them. */
+    private final byte[] cells;
+    /** Distinct tiles in the order they were first stored. */
+    private TETile[] palette;
+    /** Number of entries of palette in use. */
+    private int paletteSize;
+    /** Palette index of each tile. Rebuilt from palette when needed, so it is not saved. */
+    private transient IdentityHashMap<TETile, Integer> index;
+
+    /** Creates a map of the given size filled with null tiles. */
+    public PaletteGrid(int width, int height) {
+        this(width, height, new byte[width * height]);
+    }
+
+    /** Creates a map of the given size whose palette indices are kept in cells, or elsewhere by
+     *  a subclass if cells is null. */
+    PaletteGrid(int width, int height, byte[] cells) {
+        this.width = width;
+        this.height = height;
+        this.cells = cells;
+        this.palette = new TETile[8];
+        this.paletteSize = 1;
+    }
+
+    /** Creates a map with the same tiles as a rectangular 2-D array. */
+    public PaletteGrid(TETile[][] map) {
+        this(map.length, map.length > 0 ? map[0].length : 0);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                setTile(x, y, map[x][y]);
+            }
+        }
+    }
+
+    public TETile getTile(int xCoord, int yCoord) {
+        return palette[cell(xCoord * height + yCoord)];
+    }
+
+    public void setTile(int xCoord, int yCoord, TETile tileType) {
+        setCell(xCoord * height + yCoord, indexOf(tileType));
+    }
+
+    /** Returns the palette index of an encoded tile. */
+    int cell(int tile) {
+        return cells[tile] & 0xFF;
+    }
+
+    /** Sets the palette index of an encoded tile. */
+    void setCell(int tile, int paletteIndex) {
+        cells[tile] = (byte) paletteIndex;
+    }
+
+    /**
+     * Stores a mask of one bit per tile alongside the tiles, such as the tiles the player has
+     * explored, if this kind of PaletteGrid has room for one.
+     *
+     * @return Whether the mask was stored. Always false for a PaletteGrid kept on the heap.
+     */
+    public boolean storeMask(BitSet mask) {
+        return false;
+    }
+
+    /** Returns the mask last given to storeMask(), or null if there is none. */
+    public BitSet loadMask() {
+        return null;
+    }
+
+    /**
+     * Returns the palette index of a tile, adding it to the palette if it is new.
+     *
+     * @throws IllegalStateException If the palette already holds MAX_TILES tiles.
+     */
+    private int indexOf(TETile tile) {
+        if (tile == null) {
+            return 0;
+        }
+        if (index == null) {
+            index = new IdentityHashMap<>();
+            for (int i = 1; i < paletteSize; i++) {
+                index.put(palette[i], i);
+            }
+        }
+        Integer i = index.get(tile);
+        if (i != null) {
+            return i;
+        }
+        if (paletteSize == MAX_TILES) {
+            throw new IllegalStateException("A PaletteGrid can hold at most " + MAX_TILES
+                    + " different tiles.");
+        }
+        if (paletteSize == palette.length) {
+            palette = Arrays.copyOf(palette, Math.min(MAX_TILES, 2 * palette.length));
+        }
+        palette[paletteSize] = tile;
+        index.put(tile, paletteSize);
+        return paletteSize++;
+    }
+
+    /** Returns a new 2-D array holding the same tiles. */
+    public TETile[][] toArray() {
+        TETile[][] map = new TETile[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                map[x][y] = getTile(x, y);
+            }
+        }
+        return map;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,99 @@
+package byow.gridsys;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache of paths found on a Grid, keyed by start, stop, and search
+ * mode. Every entry belongs to one version of the Grid's map; as soon as the Grid reports a
+ * different version, the whole cache is dropped, so a path is never served after the tiles it
+ * was found on have changed.
+ *
+ * @author Nicholas Nguyen
+ */
+class PathCache {
+
+    /** Maximum number of paths held at once. */
+    private final int capacity;
+    /** Cached paths, in access order so that the eldest entry is the least recently used. */
+    private final LinkedHashMap<Key, List<TilePoint>> paths;
+    /** Map version that every cached path was found on. */
+    private int version;
+
+    /** Number of lookups answered from the cache. */
+    private long hits;
+    /** Number of lookups that had to search. */
+    private long misses;
+
+    PathCache(int capacity) {
+        this.capacity = capacity;
+        this.paths = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<TilePoint>> eldest) {
+                return size() > PathCache.this.capacity;
+            }
+        };
+    }
+
+    /** Key of a cached path. */
+    record Key(int startX, int startY, int stopX, int stopY, PathMode mode) {
+        Key(TilePoint start, TilePoint stop, PathMode mode) {
+            this(start.x, start.y, stop.x, stop.y, mode);
+        }
+    }
+
+    /**
+     * Looks up a path, counting the lookup as a hit or a miss. TilePoints are mutable and callers
+     * are free to modify the path they get back, so both the List and its points are copies.
+     *
+     * @param mapVersion Current version of the Grid's map.
+     * @return A copy of the cached path, or null if there is none.
+     */
+    List<TilePoint> get(Key key, int mapVersion) {
+        if (mapVersion != version) {
+            paths.clear();
+            version = mapVersion;
+        }
+        List<TilePoint> path = paths.get(key);
+        if (path == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copyOf(path);
+    }
+
+    /** Stores a copy of a path found on the given map version. */
+    void put(Key key, List<TilePoint> path, int mapVersion) {
+        if (capacity <= 0) {
+            return;
+        }
+        if (mapVersion != version) {
+            paths.clear();
+            version = mapVersion;
+        }
+        paths.put(key, copyOf(path));
+    }
+
+    private static List<TilePoint> copyOf(List<TilePoint> path) {
+        ArrayList<TilePoint> copy = new ArrayList<>(path.size());
+        for (TilePoint point : path) {
+            copy.add(new TilePoint(point));
+        }
+        return copy;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    int size() {
+        return paths.size();
+    }
+}
@@ -0,0 +1,18 @@
+package byow.gridsys;
+
+/**
+ * Search strategies that {@link Grid#pathfinder(TilePoint, TilePoint, PathMode)} can use. Every
+ * mode returns a 4-connected path, one tile per step.
+ *
+ * @author Nicholas Nguyen
+ */
+public enum PathMode {
+    /** Plain A*, which pushes every walkable neighbor of every expanded tile. */
+    ASTAR,
+    /** A* with Jump Point Search pruning. Best suited to large open rooms. */
+    JUMP_POINT,
+    /** Plans over the Grid's RoomGraph first, then searches each leg between doors with Jump Point
+     *  Search. Near-optimal rather than optimal, and falls back to JUMP_POINT if the Grid has no
+     *  RoomGraph. Best suited to long paths across many rooms. */
+    HIERARCHICAL
+}
@@ -0,0 +1,119 @@
+package byow.gridsys;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Abstract layout of a generated map: the rectangular rooms, and the hallways (portals) that were
+ * built between them. Each portal records the door tile it opened in the wall of each room it
+ * connects. Used by Grid to plan paths room by room before searching tile by tile.
+ *
+ * @author Nicholas Nguyen
+ */
+public class RoomGraph implements Serializable {
+
+    /** Pinned so that saves and cached worlds keep loading after fields are added. Room and
+     *  Portal are records, which are read by their components and need no pin. */
+    private static final long serialVersionUID = -7653424221944657754L;
+
+    /** Width and height of the map the graph describes. */
+    private final int width;
+    private final int height;
+
+    /** Rooms of the map, indexed by room number. */
+    private final List<Room> rooms = new ArrayList<>();
+    /** Hallways between rooms. Portal p owns doors 2p and 2p + 1. */
+    private final List<Portal> portals = new ArrayList<>();
+
+    /** Room that contains each tile, or -1 if the tile is not in any room. Built lazily. */
+    private transient int[] roomOf;
+    /** Doors in the wall of each room, by door index. Built lazily. */
+    private transient List<List<Integer>> roomDoors;
+
+    /** A room, including its walls. */
+    public record Room(int west, int south, int east, int north) implements Serializable { }
+
+    /** A hallway between two rooms, with the tile where it enters each room's wall. */
+    public record Portal(int roomA, TilePoint doorA, int roomB, TilePoint doorB)
+            implements Serializable { }
+
+    public RoomGraph(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Adds a room and returns its room number. */
+    public int addRoom(int west, int south, int east, int north) {
+        rooms.add(new Room(west, south, east, north));
+        roomOf = null;
+        roomDoors = null;
+        return rooms.size() - 1;
+    }
+
+    /** Adds a hallway between two rooms, given the door tile in each room's wall. */
+    public void addPortal(int roomA, TilePoint doorA, int roomB, TilePoint doorB) {
+        portals.add(new Portal(roomA, new TilePoint(doorA), roomB, new TilePoint(doorB)));
+        roomDoors = null;
+    }
+
+    public List<Room> getRooms() {
+        return rooms;
+    }
+
+    public List<Portal> getPortals() {
+        return portals;
+    }
+
+    /** Returns the number of the room containing the tile, or -1 if it is not in a room. */
+    public int roomAt(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return -1;
+        }
+        if (roomOf == null) {
+            roomOf = new int[width * height];
+            Arrays.fill(roomOf, -1);
+            for (int i = 0; i < rooms.size(); i++) {
+                Room room = rooms.get(i);
+                for (int rx = room.west(); rx <= room.east(); rx++) {
+                    for (int ry = room.south(); ry <= room.north(); ry++) {
+                        roomOf[rx * height + ry] = i;
+                    }
+                }
+            }
+        }
+        return roomOf[x * height + y];
+    }
+
+    /** Returns the number of doors, which is twice the number of portals. */
+    int doorCount() {
+        return 2 * portals.size();
+    }
+
+    /** Returns the tile of the given door. */
+    TilePoint door(int door) {
+        Portal portal = portals.get(door / 2);
+        return door % 2 == 0 ? portal.doorA() : portal.doorB();
+    }
+
+    /** Returns the room whose wall the given door is in. */
+    int doorRoom(int door) {
+        Portal portal = portals.get(door / 2);
+        return door % 2 == 0 ? portal.roomA() : portal.roomB();
+    }
+
+    /** Returns the doors in the wall of the given room. */
+    List<Integer> doorsOf(int room) {
+        if (roomDoors == null) {
+            roomDoors = new ArrayList<>();
+            for (int i = 0; i < rooms.size(); i++) {
+                roomDoors.add(new ArrayList<>());
+            }
+            for (int d = 0; d < doorCount(); d++) {
+                roomDoors.get(doorRoom(d)).add(d);
+            }
+        }
+        return roomDoors.get(room);
+    }
+}
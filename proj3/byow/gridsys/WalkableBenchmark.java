@@ -0,0 +1,67 @@
+package byow.gridsys;
+
+import byow.WorldGen.MSTMapGenerator;
+
+import java.util.Random;
+
+/**
+ * Compares the two ways of asking whether a tile can be walked on: reading the tile and calling
+ * TETile.valid(), or reading Grid's walkability bitmask through Grid.isWalkable(). Both are asked
+ * about the same random tiles of a generated map, ROUNDS times over, and the average time per
+ * check is printed for each. The first WARMUP rounds only let the JIT warm up and are not printed.
+ *
+ * Run with the map size as an argument, or with none for DEFAULT_SIZE.
+ *
+ * @author Nicholas Nguyen
+ */
+public class WalkableBenchmark {
+
+    private static final int DEFAULT_SIZE = 200;
+    /** Number of random tiles asked about in each pass. */
+    private static final int TILES = 1 << 20;
+    /** Number of passes over the random tiles in each round. */
+    private static final int PASSES = 20;
+    private static final int WARMUP = 4;
+    private static final int ROUNDS = 8;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        Random random = new Random(1);
+        Grid grid = new Grid(new MSTMapGenerator().generate(size, size, random));
+        int[] xs = new int[TILES];
+        int[] ys = new int[TILES];
+        for (int i = 0; i < TILES; i++) {
+            xs[i] = random.nextInt(size);
+            ys[i] = random.nextInt(size);
+        }
+
+        // Counted and printed so that the JIT cannot drop the checks.
+        long walkable = 0;
+        System.out.printf("%5s %12s %12s%n", "Round", "valid() ns", "bitmask ns");
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int pass = 0; pass < PASSES; pass++) {
+                for (int i = 0; i < TILES; i++) {
+                    if (grid.getTile(xs[i], ys[i]).valid()) {
+                        walkable++;
+                    }
+                }
+            }
+            long middle = System.nanoTime();
+            for (int pass = 0; pass < PASSES; pass++) {
+                for (int i = 0; i < TILES; i++) {
+                    if (grid.isWalkable(xs[i], ys[i])) {
+                        walkable--;
+                    }
+                }
+            }
+            long end = System.nanoTime();
+            if (round >= WARMUP) {
+                double checks = (double) PASSES * TILES;
+                System.out.printf("%5d %12.2f %12.2f%n", round - WARMUP + 1,
+                        (middle - start) / checks, (end - middle) / checks);
+            }
+        }
+        System.out.println("Difference in walkable counts (should be 0): " + walkable);
+    }
+}